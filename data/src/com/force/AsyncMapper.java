@@ -0,0 +1,236 @@
+package com.force;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs a function over a snapshot of the elements of a list on a bounded
+ * number of workers, for {@link FastArrayList#mapAsync} and
+ * {@link FastArrayList#forEachAsync}.
+ *
+ * <p>Workers claim batches of consecutive positions from a shared cursor
+ * and store each result at the position of its element, so the results
+ * come out in order without any sorting.  The operation fails as soon as
+ * one element fails or times out, and stops early when its future is
+ * completed or cancelled from outside: the workers take no new elements,
+ * and those in the middle of one are interrupted.
+ */
+final class AsyncMapper<T> {
+
+    /** Worker states besides the position of the element being processed. */
+    private static final int IDLE = -1, TIMED_OUT = -2, STOPPED = -3;
+
+    /** Executors.newVirtualThreadPerTaskExecutor, or null before Java 21. */
+    private static final Method NEW_VIRTUAL_EXECUTOR;
+    static {
+        Method m;
+        try {
+            m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            m = null;
+        }
+        NEW_VIRTUAL_EXECUTOR = m;
+    }
+
+    /** Interrupts the workers that overrun their timeout. */
+    private static final class Watchdog {
+        static final ScheduledThreadPoolExecutor TIMER;
+        static {
+            TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "force-async-watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private final Object[] elements;
+    private final Object[] results;
+    private final Function<Object, ?> fn;
+    private final Function<Object[], T> finisher;
+    private final int batchSize;
+    private final long timeoutNanos;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger live;
+    private final AsyncMapper<?>.Worker[] workers;
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    /**
+     * @param elements the elements to process
+     * @param fn the function to apply to every element
+     * @param keepResults whether to store the results of fn
+     * @param finisher turns the results, or null if not kept, into the
+     *        value of the future
+     */
+    private AsyncMapper(Object[] elements, Function<Object, ?> fn, boolean keepResults,
+                        Function<Object[], T> finisher, AsyncOptions options) {
+        this.elements = elements;
+        this.results = keepResults ? new Object[elements.length] : null;
+        this.fn = fn;
+        this.finisher = finisher;
+        this.batchSize = options.batchSize;
+        this.timeoutNanos = options.timeoutNanos;
+        int batches = (int) ((elements.length + (long) batchSize - 1) / batchSize);
+        this.workers = new AsyncMapper<?>.Worker[Math.min(options.maxConcurrency, batches)];
+        this.live = new AtomicInteger(workers.length);
+    }
+
+    /**
+     * Starts processing {@code elements} and returns the future of the
+     * result.
+     */
+    static <T> CompletableFuture<T> start(Object[] elements, Function<Object, ?> fn,
+                                          boolean keepResults, Function<Object[], T> finisher,
+                                          AsyncOptions options) {
+        AsyncMapper<T> m = new AsyncMapper<>(elements, fn, keepResults, finisher, options);
+        if (m.workers.length == 0) {
+            m.future.complete(finisher.apply(m.results));
+            return m.future;
+        }
+        for (int w = 0; w < m.workers.length; w++)
+            m.workers[w] = m.new Worker();
+        m.future.whenComplete((r, t) -> m.stopAll());
+
+        Executor executor = options.executor;
+        ExecutorService own = (executor == null) ? newExecutor(m.workers.length) : null;
+        try {
+            for (AsyncMapper<?>.Worker w : m.workers)
+                ((own != null) ? own : executor).execute(w);
+        } catch (RejectedExecutionException e) {
+            m.future.completeExceptionally(e);
+        } finally {
+            if (own != null)
+                own.shutdown();  // lets its threads end with the workers
+        }
+        return m.future;
+    }
+
+    /**
+     * Returns an executor of virtual threads if the JDK has them, and of
+     * {@code threads} daemon platform threads otherwise.
+     */
+    private static ExecutorService newExecutor(int threads) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "force-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void stopAll() {
+        for (AsyncMapper<?>.Worker w : workers)
+            w.stop();
+    }
+
+    final class Worker implements Runnable {
+        /** The position being processed, IDLE, TIMED_OUT or STOPPED. */
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private volatile Thread thread;
+
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                process();
+            } finally {
+                thread = null;
+                if (live.decrementAndGet() == 0 && !future.isDone()) {
+                    try {
+                        future.complete(finisher.apply(results));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            }
+        }
+
+        private void process() {
+            final int n = elements.length;
+            // from turns negative if the cursor overflows past a huge n
+            for (int from; (from = next.getAndAdd(batchSize)) < n && from >= 0; ) {
+                final int to = Math.min(n, from + batchSize);
+                for (int i = from; i < to; i++) {
+                    if (!state.compareAndSet(IDLE, i))
+                        return;  // stopped
+                    final int index = i;
+                    ScheduledFuture<?> timer = (timeoutNanos == 0) ? null :
+                            Watchdog.TIMER.schedule(() -> timeOut(index), timeoutNanos,
+                                    TimeUnit.NANOSECONDS);
+                    Object r;
+                    Throwable failure = null;
+                    try {
+                        r = fn.apply(elements[i]);
+                    } catch (Throwable t) {
+                        r = null;
+                        failure = t;
+                    }
+                    if (timer != null)
+                        timer.cancel(false);
+                    if (!state.compareAndSet(i, IDLE)) {
+                        // timed out or stopped; the interrupt was sent while
+                        // holding the lock, so it has landed once we hold it
+                        synchronized (this) {
+                            Thread.interrupted();
+                        }
+                        return;
+                    }
+                    if (failure != null) {
+                        future.completeExceptionally(failure);
+                        return;
+                    }
+                    if (results != null)
+                        results[i] = r;
+                }
+            }
+        }
+
+        /**
+         * Fails the operation and interrupts this worker if it is still
+         * processing element {@code index}.  The future fails at once,
+         * whether or not the function heeds the interrupt.
+         */
+        private void timeOut(int index) {
+            boolean timedOut;
+            synchronized (this) {
+                if (timedOut = state.compareAndSet(index, TIMED_OUT))
+                    interrupt();
+            }
+            // outside the lock, as completing stops the other workers
+            if (timedOut)
+                future.completeExceptionally(new TimeoutException("Element " + index +
+                        " timed out after " + timeoutNanos + " ns"));
+        }
+
+        /**
+         * Keeps this worker from taking new elements, and interrupts it if
+         * it is processing one.
+         */
+        synchronized void stop() {
+            if (state.getAndSet(STOPPED) >= 0)
+                interrupt();
+        }
+
+        /**
+         * Interrupts the thread of this worker.  Called with the lock held,
+         * and only after taking the state away from the worker, which then
+         * takes the lock before clearing the interrupt and leaving, so no
+         * interrupt outlives the worker on its thread.
+         */
+        private void interrupt() {
+            Thread t = thread;
+            if (t != null)
+                t.interrupt();
+        }
+    }
+}
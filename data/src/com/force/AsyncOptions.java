@@ -0,0 +1,99 @@
+package com.force;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How {@link FastArrayList#mapAsync(java.util.function.Function, AsyncOptions)}
+ * and {@link FastArrayList#forEachAsync(java.util.function.Consumer, AsyncOptions)}
+ * run: how many elements are processed at once, how many each worker takes
+ * at a time, how long a single element may take, and on which executor.
+ *
+ * <p>By default up to 16 elements are processed at once, one at a time per
+ * worker, with no timeout, on virtual threads where the JDK has them and
+ * on daemon platform threads otherwise.  Options are read when an
+ * operation starts; changing them later does not affect it.
+ */
+public final class AsyncOptions {
+    int maxConcurrency = 16;
+    int batchSize = 1;
+    long timeoutNanos;
+    Executor executor;
+
+    /**
+     * Creates options with the defaults.
+     */
+    public AsyncOptions() {
+    }
+
+    /**
+     * Sets the maximum number of elements processed at once, which is the
+     * number of workers started.
+     *
+     * @param maxConcurrency the maximum number of concurrent workers
+     * @return these options
+     * @throws IllegalArgumentException if {@code maxConcurrency} is not
+     *         positive
+     */
+    public AsyncOptions maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0)
+            throw new IllegalArgumentException("Illegal max concurrency: " + maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive elements a worker claims at a time.
+     * Larger batches cost less coordination for cheap functions, smaller
+     * ones balance uneven latencies better.
+     *
+     * @param batchSize the number of elements claimed at a time
+     * @return these options
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public AsyncOptions batchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets how long the function may take on a single element.  A worker
+     * that overruns is interrupted, and the operation fails at once with a
+     * {@link java.util.concurrent.TimeoutException}, even if the function
+     * ignores the interrupt.  Zero means no timeout.
+     *
+     * @param timeout the maximum time per element, or 0
+     * @param unit the unit of {@code timeout}
+     * @return these options
+     * @throws IllegalArgumentException if {@code timeout} is negative
+     */
+    public AsyncOptions timeout(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Illegal timeout: " + timeout);
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the executor that runs the workers, or null for the default.
+     * The executor must be able to run {@code maxConcurrency} tasks at
+     * once for the operation to reach that concurrency.
+     *
+     * @param executor the executor to run the workers on, or null
+     * @return these options
+     */
+    public AsyncOptions executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncOptions[maxConcurrency=" + maxConcurrency + ", batchSize=" + batchSize +
+                ", timeoutNanos=" + timeoutNanos + ", executor=" +
+                Objects.toString(executor, "default") + "]";
+    }
+}
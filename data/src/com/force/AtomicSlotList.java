@@ -0,0 +1,269 @@
+package com.force;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A fixed-size list whose slots can be read and updated atomically by any
+ * number of threads, for slot tables where many threads update different
+ * positions.
+ *
+ * <p>Each slot behaves like an {@link java.util.concurrent.atomic.AtomicReference}:
+ * {@link #get} and {@link #set} are volatile accesses, {@link #compareAndSet}
+ * and the update methods are atomic, and {@link #setRelease} is the cheaper
+ * ordered store.  No operation locks, and operations on different slots
+ * never wait for each other.  The size is fixed at construction;
+ * {@code add} and {@code remove} throw
+ * {@link UnsupportedOperationException}.
+ *
+ * <p>A list created with {@link #padded(int)} spaces its slots a cache line
+ * apart, so that threads hammering neighbouring slots do not invalidate each
+ * other's caches.  This costs {@value #PAD} times the memory and is only
+ * worth it for small tables of very hot slots.
+ *
+ * <p>The bulk operations inherited from {@link AbstractList}, such as
+ * iteration, {@code equals} and {@code toString}, read each slot atomically
+ * but do not take a snapshot of the whole list.
+ *
+ * @param <E> the type of elements held in this list
+ */
+public class AtomicSlotList<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * Slot spacing of padded lists: 16 references span at least one 64 byte
+     * cache line even with compressed pointers.
+     */
+    static final int PAD = 16;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final AtomicReferenceArray<E> slots;
+    private final int size;
+    private final int shift;
+
+    private AtomicSlotList(int size, int shift) {
+        if (size < 0)
+            throw new IllegalArgumentException("Illegal Size: " + size);
+        if (size > (MAX_ARRAY_SIZE >> shift))
+            throw new IllegalArgumentException("Size too large: " + size);
+        this.size = size;
+        this.shift = shift;
+        this.slots = new AtomicReferenceArray<>(size << shift);
+    }
+
+    /**
+     * Constructs a list of {@code size} slots, all null.
+     *
+     * @param size the number of slots
+     * @throws IllegalArgumentException if the specified size is negative
+     *         or larger than the largest array
+     */
+    public AtomicSlotList(int size) {
+        this(size, 0);
+    }
+
+    /**
+     * Constructs a list with one slot for each element of the specified
+     * collection, in the order they are returned by its iterator.
+     *
+     * @param c the collection whose elements are to be placed into this list
+     * @throws NullPointerException if the specified collection is null
+     */
+    public AtomicSlotList(Collection<? extends E> c) {
+        @SuppressWarnings("unchecked")
+        E[] a = (E[]) c.toArray();
+        // c.size() may disagree with toArray if c is modified concurrently
+        this.size = a.length;
+        this.shift = 0;
+        this.slots = new AtomicReferenceArray<>(a);
+    }
+
+    /**
+     * Returns a list of {@code size} null slots, each on its own cache line.
+     *
+     * @param size the number of slots
+     * @param <E> the type of elements held in the list
+     * @return a new padded list
+     * @throws IllegalArgumentException if the specified size is negative,
+     *         or too large for its padded slots to fit in an array
+     */
+    public static <E> AtomicSlotList<E> padded(int size) {
+        return new AtomicSlotList<>(size, Integer.numberOfTrailingZeros(PAD));
+    }
+
+    /**
+     * Returns the number of slots in this list.
+     *
+     * @return the number of slots in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the element at the specified position, with volatile
+     * semantics.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public E get(int index) {
+        return slots.get(slot(index));
+    }
+
+    /**
+     * Returns the element at the specified position.  Subsequent reads by
+     * this thread are not reordered before it.  Equivalent to
+     * {@link #get}, which has no weaker counterpart on Java 8.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public E getAcquire(int index) {
+        return slots.get(slot(index));
+    }
+
+    /**
+     * Replaces the element at the specified position, with volatile
+     * semantics.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public E set(int index, E element) {
+        return slots.getAndSet(slot(index), element);
+    }
+
+    /**
+     * Stores {@code element} at the specified position without waiting for
+     * the store to become visible to other threads.  Earlier writes by this
+     * thread are visible to any thread that reads {@code element} from the
+     * slot.  Cheaper than {@link #set}, and enough for publishing a value.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void setRelease(int index, E element) {
+        slots.lazySet(slot(index), element);
+    }
+
+    /**
+     * Atomically replaces the element at the specified position with
+     * {@code update} if it is currently {@code expect}, compared by
+     * identity.
+     *
+     * @param index index of the slot
+     * @param expect the expected element
+     * @param update the new element
+     * @return <tt>true</tt> if the slot was updated
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public boolean compareAndSet(int index, E expect, E update) {
+        return slots.compareAndSet(slot(index), expect, update);
+    }
+
+    /**
+     * Atomically updates the element at the specified position with the
+     * result of {@code updateFunction}, returning the previous element.  The
+     * function may be called several times under contention, so it should
+     * be free of side effects.
+     *
+     * @param index index of the slot
+     * @param updateFunction computes the new element from the current one
+     * @return the previous element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public E getAndUpdate(int index, UnaryOperator<E> updateFunction) {
+        return slots.getAndUpdate(slot(index), updateFunction);
+    }
+
+    /**
+     * Atomically updates the element at the specified position with the
+     * result of {@code updateFunction}, returning the new element.
+     *
+     * @param index index of the slot
+     * @param updateFunction computes the new element from the current one
+     * @return the new element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @see #getAndUpdate
+     */
+    public E updateAndGet(int index, UnaryOperator<E> updateFunction) {
+        return slots.updateAndGet(slot(index), updateFunction);
+    }
+
+    /**
+     * Atomically combines the element at the specified position with
+     * {@code x}, returning the previous element.
+     *
+     * @param index index of the slot
+     * @param x the value to combine with the current element
+     * @param accumulatorFunction combines the current element with {@code x}
+     * @return the previous element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @see #getAndUpdate
+     */
+    public E getAndAccumulate(int index, E x, BinaryOperator<E> accumulatorFunction) {
+        return slots.getAndAccumulate(slot(index), x, accumulatorFunction);
+    }
+
+    /**
+     * Atomically combines the element at the specified position with
+     * {@code x}, returning the new element.
+     *
+     * @param index index of the slot
+     * @param x the value to combine with the current element
+     * @param accumulatorFunction combines the current element with {@code x}
+     * @return the new element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @see #getAndUpdate
+     */
+    public E accumulateAndGet(int index, E x, BinaryOperator<E> accumulatorFunction) {
+        return slots.accumulateAndGet(slot(index), x, accumulatorFunction);
+    }
+
+    /**
+     * Stores {@code element} in every slot, one slot at a time.
+     *
+     * @param element the element to store
+     */
+    public void fill(E element) {
+        for (int i = 0; i < size; i++)
+            slots.set(i << shift, element);
+    }
+
+    /**
+     * Returns a list holding the current element of each slot.  Each slot is
+     * read atomically, but slots updated during the copy may be seen either
+     * before or after the update.
+     *
+     * @return a new list with the elements of this list
+     */
+    public FastArrayList<E> snapshot() {
+        Object[] a = new Object[size];
+        for (int i = 0; i < size; i++)
+            a[i] = slots.get(i << shift);
+        FastArrayList<E> list = new FastArrayList<>(size);
+        list.appendArray(a, 0, size);
+        return list;
+    }
+
+    /**
+     * Maps a list index to its position in the backing array.  The index is
+     * checked here because a padded layout would otherwise let an
+     * out-of-range index land on a padding slot.
+     */
+    private int slot(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return index << shift;
+    }
+}
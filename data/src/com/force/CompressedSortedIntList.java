@@ -0,0 +1,515 @@
+package com.force;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * An append-only list of strictly increasing {@code int} values, stored in
+ * compressed blocks.
+ *
+ * <p>Values are grouped in blocks of {@value #BLOCK_SIZE}.  The first value
+ * of every block is kept verbatim in a skip index; the remaining values are
+ * stored as gaps to their predecessor, bit-packed at the smallest width that
+ * holds the largest gap of the block.  Dense runs of consecutive ids
+ * therefore cost no bits at all, and typical posting lists need a few bits
+ * per value instead of a boxed {@code Integer} per value.  The most recent,
+ * not yet full block is kept uncompressed.
+ *
+ * <p>{@link #get} and {@link #contains} locate the block through the skip
+ * index and decode at most one block.  Sequential access should go through
+ * {@link #iterator}, {@link #forEach} or {@link #decodeBlock}, which decode
+ * a whole block at a time.  Like {@link FastArrayList}, positional access
+ * does not range check its index.
+ *
+ * <p>This class is not synchronized.
+ */
+public class CompressedSortedIntList implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BLOCK_SHIFT = 7;
+
+    /**
+     * Number of values per compressed block.
+     */
+    public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private static final int[] EMPTY_INTS = {};
+    private static final byte[] EMPTY_BYTES = {};
+    private static final long[] EMPTY_WORDS = {};
+
+    /** First value of each packed block (the skip index). */
+    private int[] blockFirst = EMPTY_INTS;
+
+    /** Index into words of the first word of each packed block. */
+    private int[] blockStart = EMPTY_INTS;
+
+    /** Bits per gap of each packed block. */
+    private byte[] blockWidth = EMPTY_BYTES;
+
+    /** Number of packed blocks. */
+    private int blocks;
+
+    /** Bit-packed gaps of all packed blocks. */
+    private long[] words = EMPTY_WORDS;
+    private int wordCount;
+
+    /** Values of the last, not yet packed block. */
+    private final int[] tail = new int[BLOCK_SIZE];
+    private int tailSize;
+
+    private int size;
+
+    /**
+     * Constructs an empty list.
+     */
+    public CompressedSortedIntList() {
+    }
+
+    /**
+     * Constructs a list containing the given values.
+     *
+     * @param values strictly increasing values
+     * @throws IllegalArgumentException if the values are not strictly
+     *         increasing
+     */
+    public CompressedSortedIntList(int... values) {
+        for (int v : values)
+            add(v);
+    }
+
+    /**
+     * Returns the number of values in this list.
+     *
+     * @return the number of values in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains no values.
+     *
+     * @return <tt>true</tt> if this list contains no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of blocks, including the uncompressed last block.
+     *
+     * @return the number of blocks
+     */
+    public int blockCount() {
+        return tailSize == 0 ? blocks : blocks + 1;
+    }
+
+    /**
+     * Appends the specified value, which must be greater than every value
+     * already in this list.
+     *
+     * @param value the value to append
+     * @throws IllegalArgumentException if {@code value} is not greater than
+     *         the last value of this list
+     */
+    public void add(int value) {
+        if (size != 0) {
+            int last = last();
+            if (value <= last)
+                throw new IllegalArgumentException("Value " + value +
+                        " is not greater than last value " + last);
+        }
+        tail[tailSize++] = value;
+        size++;
+        if (tailSize == BLOCK_SIZE)
+            packTail();
+    }
+
+    /**
+     * Returns the last value of this list.  The list must not be empty.
+     */
+    private int last() {
+        if (tailSize != 0)
+            return tail[tailSize - 1];
+        int b = blocks - 1;
+        return valueAt(b, BLOCK_SIZE - 1);
+    }
+
+    private void packTail() {
+        int[] t = tail;
+        int gaps = 0;
+        for (int j = 1; j < BLOCK_SIZE; j++)
+            gaps |= t[j] - t[j - 1] - 1;
+        int width = 32 - Integer.numberOfLeadingZeros(gaps);
+        int nWords = ((BLOCK_SIZE - 1) * width + 63) >>> 6;
+
+        if (blocks == blockFirst.length) {
+            int newLength = Math.max(8, blocks + (blocks >> 1));
+            blockFirst = Arrays.copyOf(blockFirst, newLength);
+            blockStart = Arrays.copyOf(blockStart, newLength);
+            blockWidth = Arrays.copyOf(blockWidth, newLength);
+        }
+        if (wordCount + nWords > words.length) {
+            int newLength = Math.max(wordCount + nWords,
+                    words.length + (words.length >> 1));
+            words = Arrays.copyOf(words, newLength);
+        }
+
+        blockFirst[blocks] = t[0];
+        blockStart[blocks] = wordCount;
+        blockWidth[blocks] = (byte) width;
+        blocks++;
+
+        if (width != 0) {
+            long[] w = words;
+            int wi = wordCount;
+            long acc = 0;
+            int bits = 0;
+            for (int j = 1; j < BLOCK_SIZE; j++) {
+                long gap = (t[j] - t[j - 1] - 1) & 0xFFFFFFFFL;
+                acc |= gap << bits;
+                bits += width;
+                if (bits >= 64) {
+                    w[wi++] = acc;
+                    bits -= 64;
+                    acc = (bits == 0) ? 0 : gap >>> (width - bits);
+                }
+            }
+            if (bits > 0)
+                w[wi] = acc;
+        }
+        wordCount += nWords;
+        tailSize = 0;
+    }
+
+    /**
+     * Returns the {@code k}th packed gap of a block whose gaps start at
+     * word {@code start}.
+     */
+    private long gap(int start, int width, int k) {
+        int bit = k * width;
+        int wi = start + (bit >>> 6);
+        int off = bit & 63;
+        long g = words[wi] >>> off;
+        if (off + width > 64)
+            g |= words[wi + 1] << (64 - off);
+        return g & ((1L << width) - 1);
+    }
+
+    /**
+     * Returns the value at position {@code j} of packed block {@code b}.
+     */
+    private int valueAt(int b, int j) {
+        int v = blockFirst[b] + j;
+        int width = blockWidth[b];
+        if (width != 0) {
+            int start = blockStart[b];
+            for (int k = 0; k < j; k++)
+                v += (int) gap(start, width, k);
+        }
+        return v;
+    }
+
+    /**
+     * Returns the value at the specified position in this list.
+     *
+     * @param  index index of the value to return
+     * @return the value at the specified position in this list
+     */
+    public int get(int index) {
+        int b = index >>> BLOCK_SHIFT;
+        int j = index & (BLOCK_SIZE - 1);
+        return (b == blocks) ? tail[j] : valueAt(b, j);
+    }
+
+    /**
+     * Decodes block {@code b} into {@code dst}, which must have room for
+     * {@value #BLOCK_SIZE} values.
+     *
+     * @param b the block index, less than {@link #blockCount()}
+     * @param dst the array to decode into
+     * @return the number of values decoded
+     */
+    public int decodeBlock(int b, int[] dst) {
+        if (b == blocks) {
+            System.arraycopy(tail, 0, dst, 0, tailSize);
+            return tailSize;
+        }
+        int v = blockFirst[b];
+        dst[0] = v;
+        int width = blockWidth[b];
+        if (width == 0) {
+            for (int j = 1; j < BLOCK_SIZE; j++)
+                dst[j] = ++v;
+        } else {
+            int start = blockStart[b];
+            for (int j = 1; j < BLOCK_SIZE; j++)
+                dst[j] = v += (int) gap(start, width, j - 1) + 1;
+        }
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the block that would hold {@code value}: the last block, at
+     * or after {@code from}, whose first value is not greater than
+     * {@code value}, or {@code from} if there is none.
+     */
+    private int findBlock(int value, int from) {
+        if (tailSize != 0 && tail[0] <= value)
+            return Math.max(from, blocks);
+        int lo = from, hi = blocks - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockFirst[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return Math.max(from, hi);
+    }
+
+    /**
+     * Returns the index of the specified value in this list, or -1 if this
+     * list does not contain it.
+     *
+     * @param value the value to search for
+     * @return the index of {@code value}, or -1
+     */
+    public int indexOf(int value) {
+        if (size == 0)
+            return -1;
+        int b = findBlock(value, 0);
+        if (b == blocks) {
+            for (int j = 0; j < tailSize; j++)
+                if (tail[j] >= value)
+                    return (tail[j] == value) ? (b << BLOCK_SHIFT) + j : -1;
+            return -1;
+        }
+        int v = blockFirst[b];
+        int width = blockWidth[b];
+        int start = blockStart[b];
+        for (int j = 0; ; ) {
+            if (v >= value)
+                return (v == value) ? (b << BLOCK_SHIFT) + j : -1;
+            if (++j == BLOCK_SIZE)
+                return -1;
+            v += 1 + (width == 0 ? 0 : (int) gap(start, width, j - 1));
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified value.
+     *
+     * @param value the value to search for
+     * @return <tt>true</tt> if this list contains {@code value}
+     */
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Performs the given action for each value, in order, decoding a block
+     * at a time.
+     *
+     * @param action the action to be performed for each value
+     * @throws NullPointerException if the specified action is null
+     */
+    public void forEach(IntConsumer action) {
+        Objects.requireNonNull(action);
+        int[] buf = new int[BLOCK_SIZE];
+        for (int b = 0, n = blockCount(); b < n; b++) {
+            int count = decodeBlock(b, buf);
+            for (int j = 0; j < count; j++)
+                action.accept(buf[j]);
+        }
+    }
+
+    /**
+     * Returns an array containing all of the values in this list.
+     *
+     * @return an array containing all of the values in this list
+     */
+    public int[] toArray() {
+        int[] a = new int[size];
+        int[] buf = new int[BLOCK_SIZE];
+        for (int b = 0, pos = 0, n = blockCount(); b < n; b++) {
+            int count = decodeBlock(b, buf);
+            System.arraycopy(buf, 0, a, pos, count);
+            pos += count;
+        }
+        return a;
+    }
+
+    /**
+     * Returns a cursor over the values of this list.  The cursor decodes a
+     * block at a time and can skip ahead through the skip index.
+     *
+     * @return a cursor over the values of this list
+     */
+    public Cursor iterator() {
+        return new Cursor();
+    }
+
+    /**
+     * Trims the internal arrays of this list to their used length.
+     */
+    public void trimToSize() {
+        if (blocks < blockFirst.length) {
+            blockFirst = Arrays.copyOf(blockFirst, blocks);
+            blockStart = Arrays.copyOf(blockStart, blocks);
+            blockWidth = Arrays.copyOf(blockWidth, blocks);
+        }
+        if (wordCount < words.length)
+            words = Arrays.copyOf(words, wordCount);
+    }
+
+    /**
+     * Returns an estimate of the heap memory, in bytes, used by the arrays
+     * of this list.
+     *
+     * @return the estimated footprint in bytes
+     */
+    public long estimateBytes() {
+        final int header = 16;
+        return 5L * header
+                + 4L * blockFirst.length
+                + 4L * blockStart.length
+                + blockWidth.length
+                + 8L * words.length
+                + 4L * tail.length;
+    }
+
+    /**
+     * Returns a new list with the values present in both {@code a} and
+     * {@code b}.  The longer list is skipped through with its skip index, so
+     * the cost is closer to the length of the shorter list.
+     *
+     * @param a a list
+     * @param b another list
+     * @return the intersection of {@code a} and {@code b}
+     */
+    public static CompressedSortedIntList intersect(CompressedSortedIntList a,
+                                                    CompressedSortedIntList b) {
+        if (a.size > b.size) {
+            CompressedSortedIntList t = a; a = b; b = t;
+        }
+        CompressedSortedIntList result = new CompressedSortedIntList();
+        Cursor small = a.iterator();
+        Cursor large = b.iterator();
+        while (small.hasNext()) {
+            int v = small.nextInt();
+            if (!large.advance(v))
+                break;
+            if (large.peek() == v) {
+                result.add(v);
+                large.nextInt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new list with the values present in either {@code a} or
+     * {@code b}.
+     *
+     * @param a a list
+     * @param b another list
+     * @return the union of {@code a} and {@code b}
+     */
+    public static CompressedSortedIntList union(CompressedSortedIntList a,
+                                                CompressedSortedIntList b) {
+        CompressedSortedIntList result = new CompressedSortedIntList();
+        Cursor x = a.iterator();
+        Cursor y = b.iterator();
+        while (x.hasNext() && y.hasNext()) {
+            int u = x.peek(), v = y.peek();
+            if (u <= v) {
+                result.add(x.nextInt());
+                if (u == v)
+                    y.nextInt();
+            } else {
+                result.add(y.nextInt());
+            }
+        }
+        while (x.hasNext())
+            result.add(x.nextInt());
+        while (y.hasNext())
+            result.add(y.nextInt());
+        return result;
+    }
+
+    /**
+     * A block-decoding iterator over the values of the list.  Not
+     * fail-fast: values appended after the cursor has moved past the last
+     * block are not seen.
+     */
+    public final class Cursor implements PrimitiveIterator.OfInt {
+        private final int[] buf = new int[BLOCK_SIZE];
+        private int pos;        // index of the next value in buf
+        private int limit;      // number of decoded values in buf
+        private int nextBlock;  // next block to decode
+
+        Cursor() {
+        }
+
+        private boolean fill() {
+            while (pos == limit) {
+                if (nextBlock >= blockCount())
+                    return false;
+                limit = decodeBlock(nextBlock++, buf);
+                pos = 0;
+            }
+            return true;
+        }
+
+        public boolean hasNext() {
+            return pos < limit || fill();
+        }
+
+        public int nextInt() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return buf[pos++];
+        }
+
+        /**
+         * Returns the value the next call to {@link #nextInt} would return,
+         * without consuming it.
+         *
+         * @throws NoSuchElementException if there are no more values
+         */
+        public int peek() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return buf[pos];
+        }
+
+        /**
+         * Moves this cursor forward to the first remaining value that is
+         * greater than or equal to {@code target}, skipping whole blocks
+         * through the skip index.
+         *
+         * @param target the value to advance to
+         * @return <tt>true</tt> if such a value exists
+         */
+        public boolean advance(int target) {
+            if (pos < limit && buf[limit - 1] < target) {
+                pos = limit;
+            }
+            if (pos == limit) {
+                int b = findBlock(target, nextBlock);
+                if (b >= blockCount())
+                    return false;
+                limit = decodeBlock(b, buf);
+                nextBlock = b + 1;
+                pos = 0;
+            }
+            int i = Arrays.binarySearch(buf, pos, limit, target);
+            pos = (i >= 0) ? i : -(i + 1);
+            return hasNext();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.force;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link FastArrayList} for lists that are only ever used by the thread
+ * that owns them, whose traversals do not check for comodification.
+ *
+ * <p>{@code FastArrayList}'s {@code forEach}, {@code replaceAll}, iterators
+ * and spliterators re-read {@code modCount} as they go, so that they can
+ * throw {@link ConcurrentModificationException} when the list changes
+ * under them.  The read is cheap, but the action may change the list, so it
+ * cannot be hoisted out of the loop and keeps the compiler from unrolling
+ * and vectorizing it.  The traversals of this class are plain loops over
+ * the backing array, and {@link #removeIf} compacts the list in place in a
+ * single pass without the bit set {@code FastArrayList} uses to stay
+ * unmodified when the filter throws.  Mutators still count modifications,
+ * for the sublists and list iterators, which stay fail-fast.
+ *
+ * <p>Changing the list from another thread, or from inside a traversal,
+ * is not detected and leaves the traversal with undefined results: it may
+ * skip or repeat elements, see removed ones, or throw
+ * {@link ArrayIndexOutOfBoundsException}.  {@link #removeIf} with a
+ * filter that throws leaves the elements it had already removed removed.
+ * The spliterator is bound to the contents of the list when it is created,
+ * not when it is first traversed.
+ *
+ * <p>Setting the system property {@code com.force.checkConfined} to
+ * {@code true} makes every list of this class behave exactly like
+ * {@code FastArrayList}, to find lists that are not as confined as they
+ * were meant to be.  The property is read once, when the class is
+ * initialized, so the unchecked code carries no cost for it.
+ *
+ * @param <E> the type of elements in this list
+ */
+public class ConfinedFastArrayList<E> extends FastArrayList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Whether to keep FastArrayList's comodification checks.
+     */
+    static final boolean CHECKED = Boolean.getBoolean("com.force.checkConfined");
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param  initialCapacity  the initial capacity of the list
+     * @throws IllegalArgumentException if the specified initial capacity
+     *         is negative
+     */
+    public ConfinedFastArrayList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * Constructs an empty list with an initial capacity of ten.
+     */
+    public ConfinedFastArrayList() {
+        super();
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection whose elements are to be placed into this list
+     * @throws NullPointerException if the specified collection is null
+     */
+    public ConfinedFastArrayList(Collection<? extends E> c) {
+        super(c);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        if (CHECKED) {
+            super.forEach(action);
+            return;
+        }
+        Objects.requireNonNull(action);
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; i < size; i++)
+            action.accept((E) elementData[i]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachIndexed(ObjIntConsumer<? super E> action) {
+        if (CHECKED) {
+            super.forEachIndexed(action);
+            return;
+        }
+        Objects.requireNonNull(action);
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; i < size; i++)
+            action.accept((E) elementData[i], i);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        if (CHECKED || !isPlain()) {
+            super.replaceAll(operator);
+            return;
+        }
+        Objects.requireNonNull(operator);
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; i < size; i++)
+            elementData[i] = operator.apply((E) elementData[i]);
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        if (CHECKED || !isPlain())
+            return super.removeIf(filter);
+        Objects.requireNonNull(filter);
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        int i = 0;
+        while (i < size && !filter.test((E) elementData[i]))
+            i++;
+        if (i == size)
+            return false;
+        int w = i++;
+        try {
+            for (; i < size; i++) {
+                Object e = elementData[i];
+                if (!filter.test((E) e))
+                    elementData[w++] = e;
+            }
+        } finally {
+            // close the gap even if the filter threw
+            System.arraycopy(elementData, i, elementData, w, size - i);
+            final int newSize = w + size - i;
+            for (int k = newSize; k < size; k++)
+                elementData[k] = null;  // Let gc do its work
+            this.size = newSize;
+            modCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence.
+     * Unlike that of {@code FastArrayList}, it is not fail-fast.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return CHECKED ? super.iterator() : new Itr();
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the elements in this list, bound to
+     * the current backing array and size.  Unlike that of
+     * {@code FastArrayList}, it is neither late-binding nor fail-fast.
+     *
+     * @return a {@code Spliterator} over the elements in this list
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        if (CHECKED)
+            return super.spliterator();
+        return Spliterators.spliterator(elementData, 0, size, Spliterator.ORDERED);
+    }
+
+    /**
+     * AbstractList.Itr without the comodification checks.
+     */
+    private class Itr implements Iterator<E> {
+        int cursor;       // index of next element to return
+        int lastRet = -1; // index of last element returned; -1 if no such
+
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            int i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            cursor = i + 1;
+            return (E) elementData[lastRet = i];
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            ConfinedFastArrayList.this.remove(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> consumer) {
+            Objects.requireNonNull(consumer);
+            final Object[] elementData = ConfinedFastArrayList.this.elementData;
+            final int size = ConfinedFastArrayList.this.size;
+            int i = cursor;
+            for (; i < size; i++)
+                consumer.accept((E) elementData[i]);
+            cursor = i;
+            lastRet = i - 1;
+        }
+    }
+}
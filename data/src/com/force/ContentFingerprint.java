@@ -0,0 +1,124 @@
+package com.force;
+
+import java.util.Objects;
+
+/**
+ * Keeps the content fingerprint of a {@link FastArrayList} up to date as
+ * the list changes.  Installed by {@link FastArrayList#enableFingerprint()}.
+ *
+ * <p>The fingerprint of a list {@code e} of size {@code n} is the sum,
+ * modulo 2<sup>64</sup>, of {@code link(x, y)} over every pair of
+ * neighbours {@code (x, y)} in the sequence
+ * {@code START, e[0], ..., e[n - 1], END}, where {@code link} hashes the
+ * ordered pair of hash codes.  A change to a run of elements only changes
+ * the links that touch the run, wherever it is, so insertions, removals
+ * and replacements are folded in at a cost proportional to the number of
+ * elements involved, and the fingerprint still tells the order of the
+ * elements apart.  Bulk rewrites such as sorts do not report the old
+ * elements, so those only mark the fingerprint stale, to be recomputed by
+ * the next {@link #value} call.
+ */
+final class ContentFingerprint implements MutationListener {
+
+    /** The golden ratio, which is odd. */
+    private static final long P = 0x9E3779B97F4A7C15L;
+
+    /** Stand-ins for the neighbours of the first and last elements. */
+    private static final long START = 0x5BD1E9955BD1E995L, END = 0xC6A4A7935BD1E995L;
+
+    private final FastArrayList<?> list;
+    private long hash;
+    private boolean stale = true;
+
+    ContentFingerprint(FastArrayList<?> list) {
+        this.list = list;
+    }
+
+    /**
+     * Scatters a 32 bit hash code over 64 bits, so that similar elements do
+     * not give similar terms.
+     */
+    static long mix(Object e) {
+        return fmix(Objects.hashCode(e) + P);
+    }
+
+    /**
+     * The MurmurHash3 finalizer, a bijection of 64 bit values.
+     */
+    private static long fmix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Returns the term of the element mixed to {@code x} followed by the
+     * element mixed to {@code y}; not symmetric.
+     */
+    private static long link(long x, long y) {
+        return fmix(x * P + y);
+    }
+
+    /**
+     * Returns the fingerprint of the first {@code size} elements of
+     * {@code a}, computed from scratch.
+     */
+    static long compute(Object[] a, int size) {
+        return chain(START, a, 0, size, END);
+    }
+
+    /**
+     * Returns the sum of the links from {@code left} through
+     * {@code a[from]} to {@code a[to - 1]} to {@code right}.
+     */
+    private static long chain(long left, Object[] a, int from, int to, long right) {
+        long h = 0, prev = left;
+        for (int i = from; i < to; i++) {
+            long m = mix(a[i]);
+            h += link(prev, m);
+            prev = m;
+        }
+        return h + link(prev, right);
+    }
+
+    /**
+     * Returns the fingerprint of the list, recomputing it if it is stale.
+     */
+    long value() {
+        if (stale) {
+            hash = compute(list.elementData, list.size);
+            stale = false;
+        }
+        return hash;
+    }
+
+    public void inserted(Object[] a, int index, int count, int size) {
+        if (stale)
+            return;
+        long left = (index == 0) ? START : mix(a[index - 1]);
+        long right = (index + count == size) ? END : mix(a[index + count]);
+        hash += chain(left, a, index, index + count, right) - link(left, right);
+    }
+
+    public void removing(Object[] a, int from, int to, int size) {
+        if (stale)
+            return;
+        long left = (from == 0) ? START : mix(a[from - 1]);
+        long right = (to == size) ? END : mix(a[to]);
+        hash += link(left, right) - chain(left, a, from, to, right);
+    }
+
+    public void set(int index, Object oldValue, Object newValue) {
+        if (stale)
+            return;
+        Object[] a = list.elementData;
+        long left = (index == 0) ? START : mix(a[index - 1]);
+        long right = (index + 1 == list.size) ? END : mix(a[index + 1]);
+        long o = mix(oldValue), n = mix(newValue);
+        hash += link(left, n) + link(n, right) - link(left, o) - link(o, right);
+    }
+
+    public void replaced(Object[] a, int from, int to, int size) {
+        stale = true;
+    }
+}
@@ -0,0 +1,302 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * A bounded window over the most recent {@code double} samples, which keeps
+ * their sum, mean, minimum and maximum up to date as samples enter and
+ * leave, for rate limiters and telemetry.
+ *
+ * <p>The samples are kept in a ring buffer: adding a sample to a full
+ * window evicts the oldest in constant time, with no shifting.  The sum is
+ * updated on every addition and eviction.  The minimum and maximum come
+ * from two monotonic deques of the samples that can still become the
+ * extreme of the window, which makes every operation amortized constant
+ * time.
+ *
+ * <p>A window created with {@link #DoubleSlidingWindow(int, long)} also
+ * evicts samples by age: every sample is added with a timestamp, and
+ * samples at least {@code maxAge} older than the latest timestamp are
+ * evicted.  Timestamps are in any unit the caller likes but must not
+ * decrease.
+ *
+ * <p>The list view holds the samples oldest first.  The primitive
+ * accessor {@link #getDouble} does not range check its index, in the same
+ * way as {@link FastArrayList#get}.  Samples can only be added at the end
+ * and evicted from the front.  Samples must be finite.
+ */
+public class DoubleSlidingWindow extends AbstractList<Double> implements RandomAccess {
+
+    private final double[] values;
+    private final long[] times;  // null unless evicting by age
+    private final long maxAge;
+
+    /** Position of the oldest sample in values. */
+    private int start;
+    private int size;
+    private double sum, compensation;
+
+    /**
+     * Positions of the samples that are smaller (minQ) or larger (maxQ)
+     * than every later sample, oldest first; each deque is a ring over
+     * the same capacity as values.
+     */
+    private final int[] minQ, maxQ;
+    private int minHead, minSize, maxHead, maxSize;
+
+    /**
+     * Constructs an empty window holding at most {@code capacity} samples.
+     *
+     * @param capacity the maximum number of samples
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public DoubleSlidingWindow(int capacity) {
+        this(capacity, 0, false);
+    }
+
+    /**
+     * Constructs an empty window holding at most {@code capacity} samples,
+     * none of them {@code maxAge} or more older than the latest.
+     *
+     * @param capacity the maximum number of samples
+     * @param maxAge the age at which samples are evicted
+     * @throws IllegalArgumentException if the capacity or maximum age is
+     *         not positive
+     */
+    public DoubleSlidingWindow(int capacity, long maxAge) {
+        this(capacity, maxAge, true);
+    }
+
+    private DoubleSlidingWindow(int capacity, long maxAge, boolean timed) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    capacity);
+        if (timed && maxAge <= 0)
+            throw new IllegalArgumentException("Illegal max age: " + maxAge);
+        this.values = new double[capacity];
+        this.times = timed ? new long[capacity] : null;
+        this.maxAge = maxAge;
+        this.minQ = new int[capacity];
+        this.maxQ = new int[capacity];
+    }
+
+    private int wrap(int i) {
+        return (i >= values.length) ? i - values.length : i;
+    }
+
+    /**
+     * Returns the maximum number of samples in this window.
+     *
+     * @return the capacity of this window
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Returns the number of samples in this window.
+     *
+     * @return the number of samples in this window
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the sample at the specified position, 0 being the oldest.
+     *
+     * @param index index of the sample to return
+     * @return the sample at the specified position
+     */
+    public double getDouble(int index) {
+        return values[wrap(start + index)];
+    }
+
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    /**
+     * Adds a sample to a window that evicts by count only, evicting the
+     * oldest sample if the window is full.
+     *
+     * @param value the sample to add
+     * @return <tt>true</tt>
+     * @throws IllegalStateException if this window evicts by age
+     */
+    public boolean add(double value) {
+        if (times != null)
+            throw new IllegalStateException("Samples need a timestamp");
+        append(value);
+        return true;
+    }
+
+    public boolean add(Double value) {
+        return add(value.doubleValue());
+    }
+
+    /**
+     * Adds a sample taken at {@code time}, first evicting the samples that
+     * are {@code maxAge} or more older, and the oldest sample if the window
+     * is still full.  A window that evicts by count only ignores the time.
+     *
+     * @param value the sample to add
+     * @param time the timestamp of the sample
+     * @throws IllegalArgumentException if {@code time} is before the
+     *         timestamp of the latest sample
+     */
+    public void add(double value, long time) {
+        if (times != null) {
+            if (size != 0 && time - times[wrap(start + size - 1)] < 0)
+                throw new IllegalArgumentException("Time went backwards: " + time);
+            evictExpired(time);
+            times[append(value)] = time;
+        } else {
+            append(value);
+        }
+    }
+
+    /**
+     * Adds a sample, evicting the oldest if the window is full, and returns
+     * its position.
+     */
+    private int append(double value) {
+        if (size == values.length)
+            evict();
+        modCount++;
+        int pos = wrap(start + size);
+        values[pos] = value;
+        size++;
+        addToSum(value);
+        while (minSize > 0 && values[minQ[wrap(minHead + minSize - 1)]] >= value)
+            minSize--;
+        minQ[wrap(minHead + minSize++)] = pos;
+        while (maxSize > 0 && values[maxQ[wrap(maxHead + maxSize - 1)]] <= value)
+            maxSize--;
+        maxQ[wrap(maxHead + maxSize++)] = pos;
+        return pos;
+    }
+
+    /**
+     * Removes and returns the oldest sample.
+     *
+     * @return the evicted sample
+     * @throws NoSuchElementException if this window is empty
+     */
+    public double evict() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        modCount++;
+        int pos = start;
+        double value = values[pos];
+        if (minQ[minHead] == pos) {
+            minHead = wrap(minHead + 1);
+            minSize--;
+        }
+        if (maxQ[maxHead] == pos) {
+            maxHead = wrap(maxHead + 1);
+            maxSize--;
+        }
+        start = wrap(pos + 1);
+        size--;
+        addToSum(-value);
+        return value;
+    }
+
+    /**
+     * Evicts the samples that are {@code maxAge} or more older than
+     * {@code now}.  Does nothing in a window that evicts by count only.
+     *
+     * @param now the current time
+     * @return the number of samples evicted
+     */
+    public int evictExpired(long now) {
+        if (times == null)
+            return 0;
+        int n = 0;
+        while (size != 0 && now - times[start] >= maxAge) {
+            evict();
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the sum of the samples in this window.
+     *
+     * @return the sum of the samples, 0 if the window is empty
+     */
+    public double sum() {
+        return sum + compensation;
+    }
+
+    /**
+     * Adds {@code x} to the running sum with Neumaier's compensated
+     * summation, so that the rounding errors of many additions and
+     * subtractions do not accumulate.
+     */
+    private void addToSum(double x) {
+        double t = sum + x;
+        if (Math.abs(sum) >= Math.abs(x))
+            compensation += (sum - t) + x;
+        else
+            compensation += (x - t) + sum;
+        sum = t;
+    }
+
+    /**
+     * Returns the mean of the samples in this window.
+     *
+     * @return the mean of the samples, NaN if the window is empty
+     */
+    public double mean() {
+        return sum() / size;
+    }
+
+    /**
+     * Returns the smallest sample in this window.
+     *
+     * @return the smallest sample
+     * @throws NoSuchElementException if this window is empty
+     */
+    public double min() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return values[minQ[minHead]];
+    }
+
+    /**
+     * Returns the largest sample in this window.
+     *
+     * @return the largest sample
+     * @throws NoSuchElementException if this window is empty
+     */
+    public double max() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return values[maxQ[maxHead]];
+    }
+
+    /**
+     * Removes all of the samples from this window.
+     */
+    public void clear() {
+        modCount++;
+        start = size = 0;
+        sum = compensation = 0;
+        minHead = minSize = maxHead = maxSize = 0;
+    }
+
+    /**
+     * Returns the samples in this window, oldest first.
+     *
+     * @return a new array holding the samples
+     */
+    public double[] toDoubleArray() {
+        double[] a = new double[size];
+        int first = Math.min(size, values.length - start);
+        System.arraycopy(values, start, a, 0, first);
+        System.arraycopy(values, 0, a, first, size - first);
+        return a;
+    }
+}
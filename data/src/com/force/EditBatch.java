@@ -0,0 +1,111 @@
+package com.force;
+
+import java.util.Arrays;
+
+/**
+ * A set of removals, insertions and replacements to be applied to a
+ * {@link FastArrayList} at once with {@link FastArrayList#applyEdits}.
+ *
+ * <p>Every position refers to the list as it is before the batch is
+ * applied, so edits can be added in any order without adjusting for the
+ * ones already added, as when applying a diff.  Elements inserted at the
+ * same position keep the order in which they were added, and are placed
+ * before the element originally at that position.  A batch can be applied
+ * any number of times and reused after {@link #clear()}.
+ *
+ * @param <E> the type of elements to insert
+ */
+public class EditBatch<E> {
+    private static final int[] EMPTY_INTS = {};
+    private static final Object[] EMPTY_OBJECTS = {};
+
+    int[] removes = EMPTY_INTS;
+    int removeCount;
+
+    int[] insertAt = EMPTY_INTS;
+    Object[] inserts = EMPTY_OBJECTS;
+    int insertCount;
+
+    int[] setAt = EMPTY_INTS;
+    Object[] sets = EMPTY_OBJECTS;
+    int setCount;
+
+    /**
+     * Creates an empty batch.
+     */
+    public EditBatch() {
+    }
+
+    private static int grown(int length) {
+        return Math.max(10, length + (length >> 1));
+    }
+
+    /**
+     * Adds the removal of the element at {@code index}.
+     *
+     * @param index the position of the element to remove
+     * @return this batch
+     */
+    public EditBatch<E> remove(int index) {
+        if (removeCount == removes.length)
+            removes = Arrays.copyOf(removes, grown(removeCount));
+        removes[removeCount++] = index;
+        return this;
+    }
+
+    /**
+     * Adds the insertion of {@code element} before the element at
+     * {@code index}, or at the end if {@code index} is the size of the
+     * list.
+     *
+     * @param index the position to insert at
+     * @param element the element to insert
+     * @return this batch
+     */
+    public EditBatch<E> insert(int index, E element) {
+        if (insertCount == insertAt.length) {
+            int n = grown(insertCount);
+            insertAt = Arrays.copyOf(insertAt, n);
+            inserts = Arrays.copyOf(inserts, n);
+        }
+        insertAt[insertCount] = index;
+        inserts[insertCount++] = element;
+        return this;
+    }
+
+    /**
+     * Adds the replacement of the element at {@code index}.
+     *
+     * @param index the position of the element to replace
+     * @param element the replacement element
+     * @return this batch
+     */
+    public EditBatch<E> set(int index, E element) {
+        if (setCount == setAt.length) {
+            int n = grown(setCount);
+            setAt = Arrays.copyOf(setAt, n);
+            sets = Arrays.copyOf(sets, n);
+        }
+        setAt[setCount] = index;
+        sets[setCount++] = element;
+        return this;
+    }
+
+    /**
+     * Returns the number of edits in this batch.
+     *
+     * @return the number of edits in this batch
+     */
+    public int size() {
+        return removeCount + insertCount + setCount;
+    }
+
+    /**
+     * Removes all edits from this batch.
+     */
+    public void clear() {
+        Arrays.fill(inserts, 0, insertCount, null);
+        Arrays.fill(sets, 0, setCount, null);
+        removeCount = insertCount = setCount = 0;
+    }
+}
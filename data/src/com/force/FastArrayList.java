@@ -1,8 +1,15 @@
 package com.force;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.function.UnaryOperator;
 
 public class FastArrayList<E> extends AbstractList<E>
@@ -24,6 +31,8 @@ public class FastArrayList<E> extends AbstractList<E>
      */
     private static final Object[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
 
+    private static final int[] EMPTY_INTS = {};
+
     /**
      * The array buffer into which the elements of the ArrayList are stored.
      * The capacity of the ArrayList is the length of this array buffer. Any
@@ -37,7 +46,31 @@ public class FastArrayList<E> extends AbstractList<E>
      *
      * @serial
      */
-    private int size;
+    int size; // non-private to simplify subclass access
+
+    /**
+     * Receives the changes made to this list, or null.  Installed by the
+     * opt-in features that follow the contents of the list, such as
+     * {@link #enableJournal()}.
+     */
+    transient MutationListener listener;
+
+    /**
+     * The number of lists sharing elementData, or null if this list owns
+     * it.  Set by {@link #cowClone()}; every list holding the counter
+     * copies the array or lets go of it before changing it.
+     */
+    transient AtomicInteger shared;
+
+    /**
+     * The shrink policy set by {@link #setShrinkPolicy}: the backing array
+     * is shrunk once the list has filled less than shrinkOccupancy of it
+     * for shrinkPatience structural modifications in a row.  A patience of
+     * 0 disables shrinking.
+     */
+    private transient float shrinkOccupancy;
+    private transient int shrinkPatience;
+    private transient int lowOccupancyCount;
 
     /**
      * Constructs an empty list with the specified initial capacity.
@@ -95,9 +128,92 @@ public class FastArrayList<E> extends AbstractList<E>
             elementData = (size == 0)
                     ? EMPTY_ELEMENTDATA
                     : Arrays.copyOf(elementData, size);
+            release();
+        }
+    }
+
+    /**
+     * Makes this list give back capacity it no longer needs.  Once fewer
+     * than {@code minOccupancy} of the slots of the backing array are used
+     * by {@code patience} structural modifications in a row, the array is
+     * shrunk to about 1.5 times the size of the list, but not below the
+     * default capacity.  Requiring the occupancy to stay low for a while
+     * keeps a list whose size swings back and forth from being shrunk and
+     * regrown on every swing, and shrinking to more than the size leaves
+     * room to grow again without copying.
+     *
+     * <p>The policy is off by default.  It is kept by clones but is not
+     * serialized.
+     *
+     * @param minOccupancy the fraction of used slots below which the array
+     *        may be shrunk, at most 0.5 so that a shrunk list is above it
+     * @param patience the number of consecutive structural modifications
+     *        at low occupancy after which the array is shrunk
+     * @throws IllegalArgumentException if {@code minOccupancy} is not in
+     *         (0, 0.5] or {@code patience} is not positive
+     */
+    public void setShrinkPolicy(float minOccupancy, int patience) {
+        if (!(minOccupancy > 0 && minOccupancy <= 0.5f))
+            throw new IllegalArgumentException("Illegal occupancy: " + minOccupancy);
+        if (patience <= 0)
+            throw new IllegalArgumentException("Illegal patience: " + patience);
+        shrinkOccupancy = minOccupancy;
+        shrinkPatience = patience;
+        lowOccupancyCount = 0;
+    }
+
+    /**
+     * Turns off the shrink policy set by {@link #setShrinkPolicy}.
+     */
+    public void clearShrinkPolicy() {
+        shrinkPatience = 0;
+        lowOccupancyCount = 0;
+    }
+
+    /**
+     * Applies the shrink policy after a structural modification, keeping
+     * room for at least {@code minCapacity} elements.
+     */
+    private void shrinkIfIdle(int minCapacity) {
+        final int capacity = elementData.length;
+        if (size >= capacity * shrinkOccupancy || capacity <= DEFAULT_CAPACITY) {
+            lowOccupancyCount = 0;
+            return;
+        }
+        if (++lowOccupancyCount < shrinkPatience)
+            return;
+        lowOccupancyCount = 0;
+        int newCapacity = Math.max(Math.max(minCapacity, size + (size >> 1)),
+                DEFAULT_CAPACITY);
+        if (newCapacity < capacity) {
+            elementData = Arrays.copyOf(elementData, newCapacity);
+            release();
         }
     }
 
+    /**
+     * Returns the number of slots of the backing array that hold no
+     * element.
+     *
+     * @return the unused capacity of this list
+     */
+    public int wastedSlots() {
+        return elementData.length - size;
+    }
+
+    /**
+     * Returns an estimate of the heap memory, in bytes, retained by this
+     * list itself: the list object and its backing array, but not the
+     * elements.  Assumes compressed references; an array shared with a
+     * {@linkplain #cowClone() clone} is counted in full.
+     *
+     * @return the estimated footprint in bytes
+     */
+    public long estimateRetainedBytes() {
+        final int header = 16;
+        return 3L * header + 4L * elementData.length;
+    }
+
     /**
      * Increases the capacity of this <tt>ArrayList</tt> instance, if
      * necessary, to ensure that it can hold at least the number of elements
@@ -128,10 +244,14 @@ public class FastArrayList<E> extends AbstractList<E>
 
     private void ensureExplicitCapacity(int minCapacity) {
         modCount++;
+        if (shrinkPatience != 0)
+            shrinkIfIdle(minCapacity);
 
         // overflow-conscious code
         if (minCapacity - elementData.length > 0)
             grow(minCapacity);
+        else
+            unshare();
     }
 
     /**
@@ -149,6 +269,53 @@ public class FastArrayList<E> extends AbstractList<E>
      * @param minCapacity the desired minimum capacity
      */
     private void grow(int minCapacity) {
+        // minCapacity is usually close to size, so this is a win:
+        elementData = Arrays.copyOf(elementData, newCapacity(minCapacity));
+        release();
+    }
+
+    /**
+     * Gives this list a private copy of its backing array if it is still
+     * shared with a {@linkplain #cowClone() copy-on-write clone}.  Called
+     * before anything is written to the backing array in place.
+     */
+    private void unshare() {
+        final AtomicInteger shared = this.shared;
+        if (shared != null) {
+            // copy before letting go, so that the last list holding the
+            // array never writes to it while another is still reading it
+            if (shared.get() > 1)
+                elementData = Arrays.copyOf(elementData, elementData.length);
+            shared.decrementAndGet();
+            this.shared = null;
+        }
+    }
+
+    /**
+     * Lets go of a shared backing array that this list has just replaced
+     * with a new one.
+     */
+    private void release() {
+        final AtomicInteger shared = this.shared;
+        if (shared != null) {
+            shared.decrementAndGet();
+            this.shared = null;
+        }
+    }
+
+    /**
+     * Returns whether changes to this list need no bookkeeping besides
+     * modCount: no listener, no shared array and no shrink policy.
+     */
+    final boolean isPlain() {
+        return listener == null && shared == null && shrinkPatience == 0;
+    }
+
+    /**
+     * Returns the capacity {@link #grow} would pick for the given minimum
+     * capacity.
+     */
+    private int newCapacity(int minCapacity) {
         // overflow-conscious code
         int oldCapacity = elementData.length;
         int newCapacity = oldCapacity + (oldCapacity >> 1);
@@ -156,8 +323,7 @@ public class FastArrayList<E> extends AbstractList<E>
             newCapacity = minCapacity;
         if (newCapacity - MAX_ARRAY_SIZE > 0)
             newCapacity = hugeCapacity(minCapacity);
-        // minCapacity is usually close to size, so this is a win:
-        elementData = Arrays.copyOf(elementData, newCapacity);
+        return newCapacity;
     }
 
     private static int hugeCapacity(int minCapacity) {
@@ -250,6 +416,39 @@ public class FastArrayList<E> extends AbstractList<E>
             FastArrayList<?> v = (FastArrayList<?>) super.clone();
             v.elementData = Arrays.copyOf(elementData, size);
             v.modCount = 0;
+            v.listener = null;
+            v.shared = null;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns a shallow copy of this list that shares its backing array
+     * with this list until either of them is modified.  This takes constant
+     * time; the first {@code set} or structural modification of either list
+     * copies the array for that list, after which the two are independent.
+     * A clone that is only read never copies anything.
+     *
+     * <p>The lists sharing an array may be used by different threads, each
+     * list being confined to one thread as usual.
+     *
+     * @return a copy-on-write clone of this list
+     */
+    public FastArrayList<E> cowClone() {
+        try {
+            @SuppressWarnings("unchecked")
+            FastArrayList<E> v = (FastArrayList<E>) super.clone();
+            if (elementData.length != 0) {
+                if (shared == null)
+                    shared = new AtomicInteger(1);
+                shared.incrementAndGet();
+                v.shared = shared;
+            }
+            v.modCount = 0;
+            v.listener = null;
             return v;
         } catch (CloneNotSupportedException e) {
             // this shouldn't happen, since we are Cloneable
@@ -257,6 +456,85 @@ public class FastArrayList<E> extends AbstractList<E>
         }
     }
 
+    /**
+     * Compares the specified object with this list for equality.  Returns
+     * <tt>true</tt> if the object is also a list of the same size whose
+     * elements are equal, in order, to the elements of this list.
+     *
+     * <p>Elements are read directly from the backing array, and another
+     * <tt>FastArrayList</tt> is compared array against array.
+     *
+     * @param o the object to be compared for equality with this list
+     * @return <tt>true</tt> if the specified object is equal to this list
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof List))
+            return false;
+        final int expectedModCount = modCount;
+        // FastArrayList can be subclassed and given arbitrary behavior, but we can
+        // still deal with the common case where o is FastArrayList precisely
+        boolean equal = (o.getClass() == FastArrayList.class)
+                ? equalsFastArrayList((FastArrayList<?>) o)
+                : equalsRange((List<?>) o);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return equal;
+    }
+
+    private boolean equalsRange(List<?> other) {
+        final Object[] es = elementData;
+        final int size = this.size;
+        Iterator<?> oit = other.iterator();
+        for (int i = 0; i < size; i++) {
+            if (!oit.hasNext() || !Objects.equals(es[i], oit.next()))
+                return false;
+        }
+        return !oit.hasNext();
+    }
+
+    private boolean equalsFastArrayList(FastArrayList<?> other) {
+        final int otherModCount = other.modCount;
+        final int s = size;
+        boolean equal;
+        if (equal = (s == other.size)) {
+            final Object[] es = elementData;
+            final Object[] oes = other.elementData;
+            if (es != oes) { // cowClones share their array
+                for (int i = 0; i < s; i++) {
+                    if (!Objects.equals(es[i], oes[i])) {
+                        equal = false;
+                        break;
+                    }
+                }
+            }
+        }
+        if (other.modCount != otherModCount)
+            throw new ConcurrentModificationException();
+        return equal;
+    }
+
+    /**
+     * Returns the hash code value for this list, as defined by
+     * {@link List#hashCode()}.
+     *
+     * @return the hash code value for this list
+     */
+    public int hashCode() {
+        final int expectedModCount = modCount;
+        final Object[] es = elementData;
+        final int size = this.size;
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            Object e = es[i];
+            hashCode = 31 * hashCode + (e == null ? 0 : e.hashCode());
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return hashCode;
+    }
+
     /**
      * Returns an array containing all of the elements in this list
      * in proper sequence (from first to last element).
@@ -339,7 +617,10 @@ public class FastArrayList<E> extends AbstractList<E>
      */
     public E set(int index, E element) {
         E oldValue = elementData(index);
+        unshare();
         elementData[index] = element;
+        if (listener != null)
+            listener.set(index, oldValue, element);
         return oldValue;
     }
 
@@ -352,6 +633,8 @@ public class FastArrayList<E> extends AbstractList<E>
     public boolean add(E e) {
         ensureCapacityInternal(size + 1);
         elementData[size++] = e;
+        if (listener != null)
+            listener.inserted(elementData, size - 1, 1, size);
         return true;
     }
 
@@ -370,6 +653,8 @@ public class FastArrayList<E> extends AbstractList<E>
                 size - index);
         elementData[index] = element;
         size++;
+        if (listener != null)
+            listener.inserted(elementData, index, 1, size);
     }
 
     /**
@@ -385,12 +670,17 @@ public class FastArrayList<E> extends AbstractList<E>
 
         modCount++;
         E oldValue = elementData(index);
+        if (listener != null)
+            listener.removing(elementData, index, index + 1, size);
+        unshare();
 
         int numMoved = size - index - 1;
         if (numMoved > 0)
             System.arraycopy(elementData, index+1, elementData, index,
                     numMoved);
         elementData[--size] = null; // clear to let GC do its work
+        if (shrinkPatience != 0)
+            shrinkIfIdle(0);
 
         return oldValue;
     }
@@ -430,11 +720,16 @@ public class FastArrayList<E> extends AbstractList<E>
      * return the value removed.
      */
     private void fastRemove(int index) {
+        if (listener != null)
+            listener.removing(elementData, index, index + 1, size);
+        unshare();
         int numMoved = size - index - 1;
         if (numMoved > 0)
             System.arraycopy(elementData, index+1, elementData, index,
                     numMoved);
         elementData[--size] = null; // clear to let GC do its work
+        if (shrinkPatience != 0)
+            shrinkIfIdle(0);
     }
 
     /**
@@ -442,12 +737,22 @@ public class FastArrayList<E> extends AbstractList<E>
      * be empty after this call returns.
      */
     public void clear() {
+        if (listener != null && size != 0)
+            listener.removing(elementData, 0, size, size);
 
-        // clear to let GC do its work
-        for (int i = 0; i < size; i++)
-            elementData[i] = null;
+        if (shared != null) {
+            // nothing to copy
+            elementData = new Object[elementData.length];
+            release();
+        } else {
+            // clear to let GC do its work
+            for (int i = 0; i < size; i++)
+                elementData[i] = null;
+        }
 
         size = 0;
+        if (shrinkPatience != 0)
+            shrinkIfIdle(0);
     }
 
     /**
@@ -469,6 +774,8 @@ public class FastArrayList<E> extends AbstractList<E>
         ensureCapacityInternal(size + numNew);
         System.arraycopy(a, 0, elementData, size, numNew);
         size += numNew;
+        if (listener != null && numNew != 0)
+            listener.inserted(elementData, size - numNew, numNew, size);
         return numNew != 0;
     }
 
@@ -500,9 +807,304 @@ public class FastArrayList<E> extends AbstractList<E>
 
         System.arraycopy(a, 0, elementData, index, numNew);
         size += numNew;
+        if (listener != null && numNew != 0)
+            listener.inserted(elementData, index, numNew, size);
         return numNew != 0;
     }
 
+    /**
+     * Appends {@code length} elements of {@code a}, starting at
+     * {@code offset}, with a single array copy.  Used by the bulk transfers
+     * in this package that already hold their elements in an array.
+     */
+    void appendArray(Object[] a, int offset, int length) {
+        insertArray(size, a, offset, length);
+    }
+
+    /**
+     * Returns a list whose first {@code size} elements are those of
+     * {@code a}, using {@code a} as the backing array without copying it.
+     * The caller must not use {@code a} afterwards, and it must be an
+     * {@code Object[]}, not an array of a subtype.
+     */
+    static <E> FastArrayList<E> adopt(Object[] a, int size) {
+        FastArrayList<E> list = new FastArrayList<>(0);
+        if (size != 0)
+            list.elementData = a;
+        list.size = size;
+        return list;
+    }
+
+    /**
+     * Inserts {@code length} elements of {@code a}, starting at
+     * {@code offset}, at position {@code index} of this list.
+     */
+    void insertArray(int index, Object[] a, int offset, int length) {
+        ensureCapacityInternal(size + length);  // Increments modCount
+        int numMoved = size - index;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index, elementData, index + length,
+                    numMoved);
+        System.arraycopy(a, offset, elementData, index, length);
+        size += length;
+        if (listener != null && length != 0)
+            listener.inserted(elementData, index, length, size);
+    }
+
+    /**
+     * Removes the elements at the given positions in a single left-to-right
+     * compaction, which costs O(n + k) instead of the O(n * k) of as many
+     * {@link #remove(int)} calls.
+     *
+     * @param sortedIndices the positions to remove, in strictly increasing
+     *        order
+     * @throws IllegalArgumentException if the positions are not strictly
+     *         increasing
+     * @throws IndexOutOfBoundsException if a position is out of range
+     */
+    public void removeAt(int[] sortedIndices) {
+        checkRemovePositions(sortedIndices, sortedIndices.length);
+        bulkEdit(sortedIndices, sortedIndices.length, EMPTY_INTS,
+                EMPTY_ELEMENTDATA, 0);
+    }
+
+    /**
+     * Inserts {@code values[k]} before the element at
+     * {@code sortedIndices[k]}, or at the end if that is {@code size()},
+     * for every {@code k}, in a single pass with at most one reallocation.
+     * Positions refer to the list before the call; values inserted at the
+     * same position keep their order.
+     *
+     * @param sortedIndices the insertion positions, in non-decreasing order
+     * @param values the elements to insert
+     * @throws IllegalArgumentException if the arrays differ in length or
+     *         the positions are decreasing somewhere
+     * @throws IndexOutOfBoundsException if a position is out of range
+     */
+    public void insertAt(int[] sortedIndices, E[] values) {
+        if (sortedIndices.length != values.length)
+            throw new IllegalArgumentException("Lengths differ: " +
+                    sortedIndices.length + " != " + values.length);
+        checkInsertPositions(sortedIndices, sortedIndices.length);
+        bulkEdit(EMPTY_INTS, 0, sortedIndices, values, values.length);
+    }
+
+    /**
+     * Applies every edit of {@code batch} in a single pass over the
+     * backing array with at most one reallocation: the replacements first,
+     * then the removals and insertions together.  The edits may have been
+     * added to the batch in any order.
+     *
+     * @param batch the edits to apply
+     * @throws IllegalArgumentException if the batch removes a position
+     *         twice
+     * @throws IndexOutOfBoundsException if a position is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public void applyEdits(EditBatch<? extends E> batch) {
+        final int removeCount = batch.removeCount;
+        final int insertCount = batch.insertCount;
+        final int setCount = batch.setCount;
+
+        int[] removed = batch.removes;
+        if (!isSorted(removed, removeCount)) {
+            removed = Arrays.copyOf(removed, removeCount);
+            Arrays.sort(removed);
+        }
+        checkRemovePositions(removed, removeCount);
+
+        int[] insertAt = batch.insertAt;
+        Object[] values = batch.inserts;
+        if (!isSorted(insertAt, insertCount)) {
+            // stable sort by position: position high, arrival order low
+            long[] keys = new long[insertCount];
+            for (int k = 0; k < insertCount; k++)
+                keys[k] = ((long) insertAt[k] << 32) | k;
+            Arrays.sort(keys);
+            insertAt = new int[insertCount];
+            values = new Object[insertCount];
+            for (int k = 0; k < insertCount; k++) {
+                insertAt[k] = (int) (keys[k] >>> 32);
+                values[k] = batch.inserts[(int) keys[k]];
+            }
+        }
+        checkInsertPositions(insertAt, insertCount);
+
+        for (int k = 0; k < setCount; k++) {
+            int index = batch.setAt[k];
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+        for (int k = 0; k < setCount; k++)
+            set(batch.setAt[k], (E) batch.sets[k]);
+        bulkEdit(removed, removeCount, insertAt, values, insertCount);
+    }
+
+    private static boolean isSorted(int[] a, int n) {
+        for (int i = 1; i < n; i++)
+            if (a[i - 1] > a[i])
+                return false;
+        return true;
+    }
+
+    private void checkRemovePositions(int[] removed, int n) {
+        for (int i = 0; i < n; i++) {
+            int index = removed[i];
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+            if (i > 0 && removed[i - 1] >= index)
+                throw new IllegalArgumentException(
+                        "Positions not strictly increasing at " + index);
+        }
+    }
+
+    private void checkInsertPositions(int[] insertAt, int n) {
+        for (int i = 0; i < n; i++) {
+            int index = insertAt[i];
+            if (index < 0 || index > size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+            if (i > 0 && insertAt[i - 1] > index)
+                throw new IllegalArgumentException(
+                        "Positions decreasing at " + index);
+        }
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: "+index+", Size: "+size;
+    }
+
+    /**
+     * Removes and inserts elements at many positions in one pass.  All
+     * positions refer to the list as it is before the call.
+     *
+     * <p>{@code removed[0, removeCount)} holds the positions to remove, in
+     * strictly increasing order.  {@code values[k]} is inserted before the
+     * element originally at {@code insertAt[k]}, or at the end if that is
+     * {@code size()}; {@code insertAt[0, insertCount)} must be
+     * non-decreasing, and values inserted at the same position keep their
+     * order.  Inserting at a removed position places the values where the
+     * removed element was.
+     *
+     * <p>If the result fits the current capacity, the kept elements are
+     * compacted left to right and then spread right to left around the
+     * insertions; otherwise everything is merged once into a single new
+     * array.  Either way the cost is O(n + k).
+     */
+    void bulkEdit(int[] removed, int removeCount,
+                  int[] insertAt, Object[] values, int insertCount) {
+        if (removeCount == 0 && insertCount == 0)
+            return;
+        final int size = this.size;
+        final int newSize = size - removeCount + insertCount;
+        if (newSize < 0)
+            throw new OutOfMemoryError();
+        if (listener != null)
+            notifyRemoving(removed, removeCount, size);
+        modCount++;
+
+        final Object[] src = elementData;
+        if (newSize > src.length) {
+            int minCapacity = (src == DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+                    ? Math.max(DEFAULT_CAPACITY, newSize) : newSize;
+            Object[] dst = new Object[newCapacity(minCapacity)];
+            int w = 0, from = 0, ri = 0;
+            for (int k = 0; k <= insertCount; k++) {
+                int p = (k < insertCount) ? insertAt[k] : size;
+                // copy the kept elements of [from, p)
+                while (from < p) {
+                    int end = (ri < removeCount && removed[ri] < p) ? removed[ri] : p;
+                    System.arraycopy(src, from, dst, w, end - from);
+                    w += end - from;
+                    from = end;
+                    if (end != p) {
+                        from++;
+                        ri++;
+                    }
+                }
+                if (k < insertCount)
+                    dst[w++] = values[k];
+            }
+            elementData = dst;
+            release();
+        } else {
+            unshare();
+            final Object[] a = elementData;
+            int kept = size;
+            if (removeCount != 0) {
+                // compact left to right over the removed slots
+                int w = removed[0];
+                for (int ri = 0; ri < removeCount; ri++) {
+                    int from = removed[ri] + 1;
+                    int end = (ri + 1 < removeCount) ? removed[ri + 1] : size;
+                    System.arraycopy(a, from, a, w, end - from);
+                    w += end - from;
+                }
+                kept = w;
+            }
+            if (insertCount != 0) {
+                // spread right to left, opening a gap before each insertion
+                int r = kept, w = newSize;
+                int ri = removeCount - 1;
+                for (int k = insertCount - 1; k >= 0; k--) {
+                    int p = insertAt[k];
+                    while (ri >= 0 && removed[ri] >= p)
+                        ri--;
+                    int move = r - (p - (ri + 1));
+                    if (move > 0) {
+                        r -= move;
+                        w -= move;
+                        System.arraycopy(a, r, a, w, move);
+                    }
+                    a[--w] = values[k];
+                }
+            }
+            // clear to let GC do its work
+            for (int i = newSize; i < size; i++)
+                a[i] = null;
+        }
+        this.size = newSize;
+        if (listener != null)
+            notifyInserted(removed, removeCount, insertAt, insertCount);
+        if (shrinkPatience != 0)
+            shrinkIfIdle(0);
+    }
+
+    /**
+     * Reports the runs of {@code removed} to the listener, last run first.
+     */
+    private void notifyRemoving(int[] removed, int removeCount, int size) {
+        int s = size;
+        for (int hi = removeCount - 1; hi >= 0; ) {
+            int lo = hi;
+            while (lo > 0 && removed[lo - 1] == removed[lo] - 1)
+                lo--;
+            listener.removing(elementData, removed[lo], removed[hi] + 1, s);
+            s -= hi - lo + 1;
+            hi = lo - 1;
+        }
+    }
+
+    /**
+     * Reports the insertions of a {@link #bulkEdit} to the listener, first
+     * run first, by their positions in the edited list.
+     */
+    private void notifyInserted(int[] removed, int removeCount,
+                                int[] insertAt, int insertCount) {
+        int s = size - insertCount;
+        int ri = 0;
+        for (int k = 0; k < insertCount; ) {
+            int p = insertAt[k];
+            while (ri < removeCount && removed[ri] < p)
+                ri++;
+            int run = k;
+            while (run < insertCount && insertAt[run] == p)
+                run++;
+            s += run - k;
+            listener.inserted(elementData, p - ri + k, run - k, s);
+            k = run;
+        }
+    }
+
     /**
      * Removes from this list all of the elements whose index is between
      * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
@@ -518,6 +1120,13 @@ public class FastArrayList<E> extends AbstractList<E>
      *          toIndex < fromIndex})
      */
     protected void removeRange(int fromIndex, int toIndex) {
+        if (listener != null) {
+            listener.bulkCall(OpTrace.Op.REMOVE_RANGE, fromIndex, toIndex - fromIndex,
+                    size, size - (toIndex - fromIndex));
+            if (fromIndex < toIndex)
+                listener.removing(elementData, fromIndex, toIndex, size);
+        }
+        unshare();
         int numMoved = size - toIndex;
         System.arraycopy(elementData, toIndex, elementData, fromIndex,
                 numMoved);
@@ -528,6 +1137,8 @@ public class FastArrayList<E> extends AbstractList<E>
             elementData[i] = null;
         }
         size = newSize;
+        if (shrinkPatience != 0)
+            shrinkIfIdle(0);
     }
 
     /**
@@ -572,6 +1183,10 @@ public class FastArrayList<E> extends AbstractList<E>
     }
 
     private boolean batchRemove(Collection<?> c, boolean complement) {
+        if (listener != null || shared != null)
+            // removeIf finds the removed runs before compacting, and
+            // leaves a shared array alone if nothing is removed
+            return removeIf(e -> c.contains(e) != complement);
         final Object[] elementData = this.elementData;
         int r = 0, w = 0;
         boolean modified = false;
@@ -595,6 +1210,8 @@ public class FastArrayList<E> extends AbstractList<E>
                 modCount += size - w;
                 size = w;
                 modified = true;
+                if (shrinkPatience != 0)
+                    shrinkIfIdle(0);
             }
         }
         return modified;
@@ -684,6 +1301,12 @@ public class FastArrayList<E> extends AbstractList<E>
      *
      * <p>The returned iterator is <a href="#fail-fast"><i>fail-fast</i></a>.
      *
+     * <p>{@link Iterator#remove} takes effect at once and shifts the rest of
+     * the list, so removing {@code k} elements while iterating costs
+     * O(n * k).  Loops that remove many elements should use
+     * {@link #removeIf} or {@link #editCursor()}, which compact the list
+     * in a single pass.
+     *
      * @return an iterator over the elements in this list in proper sequence
      */
     public Iterator<E> iterator() {
@@ -819,6 +1442,159 @@ public class FastArrayList<E> extends AbstractList<E>
         }
     }
 
+    /**
+     * Returns a cursor for filtering or patching this list while iterating
+     * over it.  Removals and insertions made through the cursor are queued
+     * and applied together, in a single pass, when the cursor is closed or
+     * runs off the end of the list, so a loop that removes or inserts at
+     * many positions costs O(n + k) instead of O(n * k).  Replacements with
+     * {@link EditCursor#set} take effect immediately.
+     *
+     * <p>Until the queued edits are applied the list, and the positions
+     * seen through the cursor, are those from before the edits.  The cursor
+     * is <a href="#fail-fast"><i>fail-fast</i></a>; the list must not be
+     * structurally modified by other means while it is open.
+     *
+     * @return a new cursor positioned before the first element
+     */
+    public EditCursor editCursor() {
+        return new EditCursor();
+    }
+
+    /**
+     * An iterator whose structural edits are deferred and applied in one
+     * pass.  Obtained from {@link #editCursor()}; use it in a
+     * try-with-resources statement, or iterate it to the end.
+     */
+    public final class EditCursor implements Iterator<E>, AutoCloseable {
+        private int cursor;       // index of next element to return
+        private int lastRet = -1; // index of last element returned; -1 if no such
+        private int expectedModCount = modCount;
+        private boolean closed;
+
+        private int[] removed = EMPTY_INTS;
+        private int removeCount;
+        private int[] insertAt = EMPTY_INTS;
+        private Object[] inserts = EMPTY_ELEMENTDATA;
+        private int insertCount;
+
+        EditCursor() {
+        }
+
+        /**
+         * Returns <tt>true</tt> if there are more elements.  Applies the
+         * queued edits once the end of the list is reached.  A closed
+         * cursor has no more elements, even if its insertions have grown
+         * the list past its position.
+         */
+        public boolean hasNext() {
+            if (closed)
+                return false;
+            if (cursor < size)
+                return true;
+            close();
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            checkForComodification();
+            int i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            cursor = i + 1;
+            return (E) elementData[lastRet = i];
+        }
+
+        /**
+         * Returns the position of the element last returned by
+         * {@link #next}, in the list as it was before any of the queued
+         * edits.
+         *
+         * @return the position of the current element, or -1
+         */
+        public int index() {
+            return lastRet;
+        }
+
+        /**
+         * Queues the removal of the element last returned by {@link #next}.
+         *
+         * @throws IllegalStateException if {@code next} has not been called,
+         *         or the current element has already been removed
+         */
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            checkForComodification();
+            if (removeCount == removed.length)
+                removed = Arrays.copyOf(removed, Math.max(DEFAULT_CAPACITY,
+                        removeCount + (removeCount >> 1)));
+            removed[removeCount++] = lastRet;
+            lastRet = -1;
+        }
+
+        /**
+         * Replaces the element last returned by {@link #next}.  The
+         * replacement is stored immediately.
+         *
+         * @param e the replacement element
+         * @throws IllegalStateException if {@code next} has not been called,
+         *         or the current element has been removed
+         */
+        public void set(E e) {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            checkForComodification();
+            FastArrayList.this.set(lastRet, e);
+        }
+
+        /**
+         * Queues the insertion of {@code e} before the element last
+         * returned by {@link #next}, or at the cursor position if there is
+         * no such element.  Elements inserted at the same position keep the
+         * order of the calls.
+         *
+         * @param e the element to insert
+         */
+        public void insertBefore(E e) {
+            checkForComodification();
+            int p = (lastRet >= 0) ? lastRet
+                    : (removeCount > 0 && removed[removeCount - 1] == cursor - 1)
+                    ? cursor - 1 : cursor;
+            if (insertCount == insertAt.length) {
+                int n = Math.max(DEFAULT_CAPACITY, insertCount + (insertCount >> 1));
+                insertAt = Arrays.copyOf(insertAt, n);
+                inserts = Arrays.copyOf(inserts, n);
+            }
+            insertAt[insertCount] = p;
+            inserts[insertCount++] = e;
+        }
+
+        /**
+         * Applies the queued removals and insertions.  Further calls have
+         * no effect.
+         */
+        public void close() {
+            if (closed)
+                return;
+            checkForComodification();
+            closed = true;
+            bulkEdit(removed, removeCount, insertAt, inserts, insertCount);
+            removed = EMPTY_INTS;
+            insertAt = EMPTY_INTS;
+            inserts = EMPTY_ELEMENTDATA;
+            removeCount = insertCount = 0;
+        }
+
+        final void checkForComodification() {
+            if (closed)
+                throw new IllegalStateException("Cursor is closed");
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
     /**
      * Returns a view of the portion of this list between the specified
      * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.  (If
@@ -850,7 +1626,7 @@ public class FastArrayList<E> extends AbstractList<E>
      */
     public List<E> subList(int fromIndex, int toIndex) {
         subListRangeCheck(fromIndex, toIndex, size);
-        return new FastArrayList.SubList(this, 0, fromIndex, toIndex);
+        return new SubList(null, fromIndex, toIndex);
     }
 
     static void subListRangeCheck(int fromIndex, int toIndex, int size) {
@@ -863,24 +1639,44 @@ public class FastArrayList<E> extends AbstractList<E>
                     ") > toIndex(" + toIndex + ")");
     }
 
+    /**
+     * A view of a range of the list.  Every sublist, however deeply nested,
+     * works directly on the backing array of the list with its absolute
+     * offset; the enclosing sublists are only visited to adjust their sizes
+     * after a structural change.
+     */
     private class SubList extends AbstractList<E> implements RandomAccess {
-        private final AbstractList<E> parent;
-        private final int parentOffset;
+        private final SubList parent;
         private final int offset;
         int size;
 
-        SubList(AbstractList<E> parent,
-                int offset, int fromIndex, int toIndex) {
+        SubList(SubList parent, int fromIndex, int toIndex) {
             this.parent = parent;
-            this.parentOffset = fromIndex;
-            this.offset = offset + fromIndex;
+            this.offset = (parent == null ? 0 : parent.offset) + fromIndex;
             this.size = toIndex - fromIndex;
             this.modCount = FastArrayList.this.modCount;
         }
 
+        /**
+         * Applies a size change made through this sublist to it and to the
+         * sublists enclosing it.
+         */
+        private void updateSizeAndModCount(int sizeChange) {
+            final int mc = FastArrayList.this.modCount;
+            SubList s = this;
+            do {
+                s.size += sizeChange;
+                s.modCount = mc;
+                s = s.parent;
+            } while (s != null);
+        }
+
         public E set(int index, E e) {
             E oldValue = FastArrayList.this.elementData(offset + index);
+            unshare();
             FastArrayList.this.elementData[offset + index] = e;
+            if (listener != null)
+                listener.set(offset + index, oldValue, e);
             return oldValue;
         }
 
@@ -893,20 +1689,24 @@ public class FastArrayList<E> extends AbstractList<E>
         }
 
         public void add(int index, E e) {
-            parent.add(parentOffset + index, e);
-            this.size++;
+            FastArrayList.this.add(offset + index, e);
+            updateSizeAndModCount(1);
         }
 
         public E remove(int index) {
-            E result = parent.remove(parentOffset + index);
-            this.size--;
+            E result = FastArrayList.this.remove(offset + index);
+            updateSizeAndModCount(-1);
             return result;
         }
 
         protected void removeRange(int fromIndex, int toIndex) {
-            parent.removeRange(parentOffset + fromIndex,
-                    parentOffset + toIndex);
-            this.size -= toIndex - fromIndex;
+            FastArrayList.this.removeRange(offset + fromIndex,
+                    offset + toIndex);
+            updateSizeAndModCount(fromIndex - toIndex);
+        }
+
+        public void clear() {
+            removeRange(0, size);
         }
 
         public boolean addAll(Collection<? extends E> c) {
@@ -914,16 +1714,133 @@ public class FastArrayList<E> extends AbstractList<E>
         }
 
         public boolean addAll(int index, Collection<? extends E> c) {
-            int cSize = c.size();
-            if (cSize==0)
+            Object[] a = c.toArray();
+            int numNew = a.length;
+            if (numNew==0)
                 return false;
 
-            parent.addAll(parentOffset + index, c);
-            this.size += cSize;
+            FastArrayList.this.insertArray(offset + index, a, 0, numNew);
+            updateSizeAndModCount(numNew);
             return true;
         }
 
-        public Iterator<E> iterator() {
+        public boolean removeIf(Predicate<? super E> filter) {
+            int removed = FastArrayList.this.removeIf(filter, offset,
+                    offset + size);
+            if (removed != 0)
+                updateSizeAndModCount(-removed);
+            return removed != 0;
+        }
+
+        public boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeIf(c::contains);
+        }
+
+        public boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeIf(e -> !c.contains(e));
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            final int expectedModCount = FastArrayList.this.modCount;
+            final E[] elementData = (E[]) FastArrayList.this.elementData;
+            final int end = offset + size;
+            for (int i = offset; FastArrayList.this.modCount == expectedModCount
+                    && i < end; i++) {
+                action.accept(elementData[i]);
+            }
+            if (FastArrayList.this.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void replaceAll(UnaryOperator<E> operator) {
+            Objects.requireNonNull(operator);
+            unshare();
+            final int expectedModCount = FastArrayList.this.modCount;
+            final Object[] elementData = FastArrayList.this.elementData;
+            final int end = offset + size;
+            for (int i = offset; FastArrayList.this.modCount == expectedModCount
+                    && i < end; i++) {
+                elementData[i] = operator.apply((E) elementData[i]);
+            }
+            if (FastArrayList.this.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            FastArrayList.this.modCount++;
+            updateSizeAndModCount(0);
+            if (listener != null)
+                rewritten(OpTrace.Op.REPLACE_ALL, offset, end);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void sort(Comparator<? super E> c) {
+            unshare();
+            final int expectedModCount = FastArrayList.this.modCount;
+            Arrays.sort((E[]) FastArrayList.this.elementData, offset, offset + size, c);
+            if (FastArrayList.this.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            FastArrayList.this.modCount++;
+            updateSizeAndModCount(0);
+            if (listener != null)
+                rewritten(OpTrace.Op.SORT, offset, offset + size);
+        }
+
+        public int indexOf(Object o) {
+            final Object[] elementData = FastArrayList.this.elementData;
+            final int end = offset + size;
+            if (o == null) {
+                for (int i = offset; i < end; i++)
+                    if (elementData[i]==null)
+                        return i - offset;
+            } else {
+                for (int i = offset; i < end; i++)
+                    if (o.equals(elementData[i]))
+                        return i - offset;
+            }
+            return -1;
+        }
+
+        public int lastIndexOf(Object o) {
+            final Object[] elementData = FastArrayList.this.elementData;
+            if (o == null) {
+                for (int i = offset + size - 1; i >= offset; i--)
+                    if (elementData[i]==null)
+                        return i - offset;
+            } else {
+                for (int i = offset + size - 1; i >= offset; i--)
+                    if (o.equals(elementData[i]))
+                        return i - offset;
+            }
+            return -1;
+        }
+
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        public Object[] toArray() {
+            return Arrays.copyOfRange(FastArrayList.this.elementData, offset,
+                    offset + size);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T[] toArray(T[] a) {
+            if (a.length < size)
+                return (T[]) Arrays.copyOfRange(FastArrayList.this.elementData,
+                        offset, offset + size, a.getClass());
+            System.arraycopy(FastArrayList.this.elementData, offset, a, 0, size);
+            if (a.length > size)
+                a[size] = null;
+            return a;
+        }
+
+        public Iterator<E> iterator() {
             return listIterator();
         }
 
@@ -1047,7 +1964,7 @@ public class FastArrayList<E> extends AbstractList<E>
 
         public List<E> subList(int fromIndex, int toIndex) {
             subListRangeCheck(fromIndex, toIndex, size);
-            return new FastArrayList.SubList(this, offset, fromIndex, toIndex);
+            return new SubList(this, fromIndex, toIndex);
         }
 
         public Spliterator<E> spliterator() {
@@ -1071,6 +1988,293 @@ public class FastArrayList<E> extends AbstractList<E>
         }
     }
 
+    /**
+     * Performs the given action for each element and its position, in
+     * order.
+     *
+     * @param action the action to be performed for each element
+     * @throws NullPointerException if the specified action is null
+     */
+    public void forEachIndexed(ObjIntConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        for (int i=0; modCount == expectedModCount && i < size; i++) {
+            action.accept(elementData[i], i);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns the sum of a {@code long} value extracted from each element.
+     * Overflow is not detected.
+     *
+     * @param mapper extracts the value to sum
+     * @return the sum of the extracted values, 0 if the list is empty
+     * @throws NullPointerException if the specified mapper is null
+     */
+    public long sumLong(ToLongFunction<? super E> mapper) {
+        Objects.requireNonNull(mapper);
+        final int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        long sum = 0;
+        for (int i=0; i < size; i++) {
+            sum += mapper.applyAsLong(elementData[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of a {@code double} value extracted from each
+     * element, added in list order.
+     *
+     * @param mapper extracts the value to sum
+     * @return the sum of the extracted values, 0 if the list is empty
+     * @throws NullPointerException if the specified mapper is null
+     */
+    public double sumDouble(ToDoubleFunction<? super E> mapper) {
+        Objects.requireNonNull(mapper);
+        final int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        double sum = 0;
+        for (int i=0; i < size; i++) {
+            sum += mapper.applyAsDouble(elementData[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the first of the smallest elements according to {@code c}.
+     *
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @return the smallest element
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E minBy(Comparator<? super E> c) {
+        return extreme(c, 1);
+    }
+
+    /**
+     * Returns the first of the largest elements according to {@code c}.
+     *
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @return the largest element
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E maxBy(Comparator<? super E> c) {
+        return extreme(c, -1);
+    }
+
+    /**
+     * Returns the first element that no other compares below, for a
+     * positive {@code sign}, or above, for a negative one.
+     */
+    private E extreme(Comparator<? super E> c, int sign) {
+        final int size = this.size;
+        if (size == 0)
+            throw new NoSuchElementException();
+        final Comparator<Object> cmp = comparator(c);
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        Object best = elementData[0];
+        for (int i=1; i < size; i++) {
+            Object e = elementData[i];
+            // test the sign rather than negate, as -MIN_VALUE == MIN_VALUE
+            int d = cmp.compare(best, e);
+            if (sign > 0 ? d > 0 : d < 0)
+                best = e;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        @SuppressWarnings("unchecked") E result = (E) best;
+        return result;
+    }
+
+    /**
+     * Returns the number of elements that satisfy {@code filter}.
+     *
+     * @param filter the predicate to test the elements with
+     * @return the number of matching elements
+     * @throws NullPointerException if the specified filter is null
+     */
+    public int count(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        final int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        int count = 0;
+        for (int i=0; i < size; i++) {
+            if (filter.test(elementData[i]))
+                count++;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return count;
+    }
+
+    /**
+     * Returns <tt>true</tt> if any element satisfies {@code filter},
+     * stopping at the first one that does.
+     *
+     * @param filter the predicate to test the elements with
+     * @return <tt>true</tt> if some element matches
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean anyMatch(Predicate<? super E> filter) {
+        return indexOfMatch(filter, true) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if every element satisfies {@code filter}, or
+     * the list is empty, stopping at the first one that does not.
+     *
+     * @param filter the predicate to test the elements with
+     * @return <tt>true</tt> if no element fails to match
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean allMatch(Predicate<? super E> filter) {
+        return indexOfMatch(filter, false) < 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if no element satisfies {@code filter}.
+     *
+     * @param filter the predicate to test the elements with
+     * @return <tt>true</tt> if no element matches
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean noneMatch(Predicate<? super E> filter) {
+        return indexOfMatch(filter, true) < 0;
+    }
+
+    /**
+     * Returns the position of the first element whose test result is
+     * {@code expected}, or -1.
+     */
+    private int indexOfMatch(Predicate<? super E> filter, boolean expected) {
+        Objects.requireNonNull(filter);
+        final int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        int i = 0;
+        while (i < size && filter.test(elementData[i]) != expected)
+            i++;
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return (i < size) ? i : -1;
+    }
+
+    /**
+     * Applies {@code fn} to every element on up to {@code maxConcurrency}
+     * workers at once, for functions that spend their time waiting, such as
+     * remote lookups.  Equivalent to {@link #mapAsync(Function, AsyncOptions)}
+     * with default options apart from the concurrency.
+     *
+     * @param fn the function to apply to each element
+     * @param maxConcurrency the maximum number of elements processed at once
+     * @param <R> the type of the results
+     * @return a future of the list of the results, in the order of the
+     *         elements
+     * @throws NullPointerException if {@code fn} is null
+     * @throws IllegalArgumentException if {@code maxConcurrency} is not
+     *         positive
+     */
+    public <R> CompletableFuture<FastArrayList<R>> mapAsync(Function<? super E, ? extends R> fn,
+                                                            int maxConcurrency) {
+        return mapAsync(fn, new AsyncOptions().maxConcurrency(maxConcurrency));
+    }
+
+    /**
+     * Applies {@code fn} to every element on a bounded number of workers,
+     * running on virtual threads where the JDK has them, and collects the
+     * results into a list presized to this one, each at the position of its
+     * element.
+     *
+     * <p>The elements are those of this list when the method is called;
+     * later changes to the list do not affect the operation.  The future
+     * fails with the first exception thrown by {@code fn}, or with a
+     * {@link java.util.concurrent.TimeoutException} if an element takes
+     * longer than the timeout of {@code options}.  Completing or
+     * cancelling the future stops the operation: no more elements are
+     * started, and the workers in the middle of one are interrupted.  A
+     * function that ignores interrupts runs on, but its result is dropped.
+     *
+     * @param fn the function to apply to each element
+     * @param options the concurrency, batching, timeout and executor
+     * @param <R> the type of the results
+     * @return a future of the list of the results, in the order of the
+     *         elements
+     * @throws NullPointerException if {@code fn} or {@code options} is null
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<FastArrayList<R>> mapAsync(Function<? super E, ? extends R> fn,
+                                                            AsyncOptions options) {
+        Objects.requireNonNull(fn);
+        Objects.requireNonNull(options);
+        return AsyncMapper.start(toArray(), (Function<Object, ?>) fn, true,
+                results -> adopt(results, results.length), options);
+    }
+
+    /**
+     * Performs {@code action} on every element on up to
+     * {@code maxConcurrency} workers at once.  Equivalent to
+     * {@link #forEachAsync(Consumer, AsyncOptions)} with default options
+     * apart from the concurrency.
+     *
+     * @param action the action to perform on each element
+     * @param maxConcurrency the maximum number of elements processed at once
+     * @return a future completed when every element has been processed
+     * @throws NullPointerException if {@code action} is null
+     * @throws IllegalArgumentException if {@code maxConcurrency} is not
+     *         positive
+     */
+    public CompletableFuture<Void> forEachAsync(Consumer<? super E> action, int maxConcurrency) {
+        return forEachAsync(action, new AsyncOptions().maxConcurrency(maxConcurrency));
+    }
+
+    /**
+     * Performs {@code action} on every element on a bounded number of
+     * workers, in the same way as {@link #mapAsync(Function, AsyncOptions)}
+     * but without collecting results.  The action is performed on the
+     * elements in no particular order.
+     *
+     * @param action the action to perform on each element
+     * @param options the concurrency, batching, timeout and executor
+     * @return a future completed when every element has been processed
+     * @throws NullPointerException if {@code action} or {@code options} is
+     *         null
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Void> forEachAsync(Consumer<? super E> action, AsyncOptions options) {
+        Objects.requireNonNull(action);
+        Objects.requireNonNull(options);
+        return AsyncMapper.start(toArray(), e -> {
+            action.accept((E) e);
+            return null;
+        }, false, results -> null, options);
+    }
+
     /**
      * Creates a <em><a href="Spliterator.html#binding">late-binding</a></em>
      * and <em>fail-fast</em> {@link Spliterator} over the elements in this
@@ -1209,19 +2413,30 @@ public class FastArrayList<E> extends AbstractList<E>
 
     @Override
     public boolean removeIf(Predicate<? super E> filter) {
+        return removeIf(filter, 0, size) != 0;
+    }
+
+    /**
+     * Removes the elements in {@code [from, to)} that satisfy
+     * {@code filter}, shifting the survivors and the rest of the list left
+     * in a single pass.
+     *
+     * @return the number of elements removed
+     */
+    int removeIf(Predicate<? super E> filter, int from, int to) {
         Objects.requireNonNull(filter);
         // figure out which elements are to be removed
         // any exception thrown from the filter predicate at this stage
         // will leave the collection unmodified
         int removeCount = 0;
-        final BitSet removeSet = new BitSet(size);
+        final BitSet removeSet = new BitSet(to - from);
         final int expectedModCount = modCount;
         final int size = this.size;
-        for (int i=0; modCount == expectedModCount && i < size; i++) {
+        for (int i=from; modCount == expectedModCount && i < to; i++) {
             @SuppressWarnings("unchecked")
             final E element = (E) elementData[i];
             if (filter.test(element)) {
-                removeSet.set(i);
+                removeSet.set(i - from);
                 removeCount++;
             }
         }
@@ -1229,14 +2444,22 @@ public class FastArrayList<E> extends AbstractList<E>
             throw new ConcurrentModificationException();
         }
 
+        if (listener != null)
+            listener.bulkCall(OpTrace.Op.REMOVE_IF, from, to - from, size, size - removeCount);
+
         // shift surviving elements left over the spaces left by removed elements
-        final boolean anyToRemove = removeCount > 0;
-        if (anyToRemove) {
-            final int newSize = size - removeCount;
-            for (int i=0, j=0; (i < size) && (j < newSize); i++, j++) {
+        if (removeCount > 0) {
+            if (listener != null)
+                notifyRemoving(removeSet, from, size);
+            unshare();
+            final Object[] elementData = this.elementData;
+            final int newTo = to - removeCount;
+            for (int i=0, j=from; j < newTo; i++, j++) {
                 i = removeSet.nextClearBit(i);
-                elementData[j] = elementData[i];
+                elementData[j] = elementData[from + i];
             }
+            System.arraycopy(elementData, to, elementData, newTo, size - to);
+            final int newSize = size - removeCount;
             for (int k=newSize; k < size; k++) {
                 elementData[k] = null;  // Let gc do its work
             }
@@ -1245,15 +2468,18 @@ public class FastArrayList<E> extends AbstractList<E>
                 throw new ConcurrentModificationException();
             }
             modCount++;
+            if (shrinkPatience != 0)
+                shrinkIfIdle(0);
         }
 
-        return anyToRemove;
+        return removeCount;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public void replaceAll(UnaryOperator<E> operator) {
         Objects.requireNonNull(operator);
+        unshare();
         final int expectedModCount = modCount;
         final int size = this.size;
         for (int i=0; modCount == expectedModCount && i < size; i++) {
@@ -1263,16 +2489,817 @@ public class FastArrayList<E> extends AbstractList<E>
             throw new ConcurrentModificationException();
         }
         modCount++;
+        if (listener != null)
+            rewritten(OpTrace.Op.REPLACE_ALL, 0, size);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public void sort(Comparator<? super E> c) {
+        unshare();
         final int expectedModCount = modCount;
         Arrays.sort((E[]) elementData, 0, size, c);
         if (modCount != expectedModCount) {
             throw new ConcurrentModificationException();
         }
         modCount++;
+        if (listener != null)
+            rewritten(OpTrace.Op.SORT, 0, size);
+    }
+
+    /**
+     * Tells the listener that the bulk operation {@code op} rewrote the
+     * elements from {@code from} to {@code to} in place.
+     */
+    private void rewritten(OpTrace.Op op, int from, int to) {
+        listener.bulkCall(op, from, to - from, size, size);
+        if (from < to)
+            listener.replaced(elementData, from, to, size);
+    }
+
+    /**
+     * Splits this list in two by {@code filter}.  Equivalent to
+     * {@link #groupBy(ToIntFunction, int)} with bucket 1 for the elements
+     * that satisfy {@code filter} and bucket 0 for the others.
+     *
+     * @param filter the predicate to split the elements by
+     * @return a list of two exactly sized lists: at 0 the elements that do
+     *         not satisfy {@code filter}, at 1 those that do, each in list
+     *         order
+     * @throws NullPointerException if the specified filter is null
+     */
+    public FastArrayList<FastArrayList<E>> partition(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        return groupBy(e -> filter.test(e) ? 1 : 0, 2);
+    }
+
+    /**
+     * Distributes the elements of this list into {@code bucketCount} new
+     * lists by the bucket number {@code bucketOf} gives each element.  A
+     * first pass computes and counts the bucket of every element, and a
+     * second copies each element into a list allocated at exactly the size
+     * of its bucket, so no list ever grows.  {@code bucketOf} is called once
+     * per element.
+     *
+     * @param bucketOf gives the bucket of an element, from 0 to
+     *        {@code bucketCount - 1}
+     * @param bucketCount the number of buckets
+     * @return a list of {@code bucketCount} exactly sized lists, the
+     *         elements of each in list order
+     * @throws NullPointerException if the specified function is null
+     * @throws IllegalArgumentException if {@code bucketCount} is not positive
+     * @throws IndexOutOfBoundsException if {@code bucketOf} returns a
+     *         bucket out of range
+     */
+    @SuppressWarnings("unchecked")
+    public FastArrayList<FastArrayList<E>> groupBy(ToIntFunction<? super E> bucketOf,
+                                                   int bucketCount) {
+        Objects.requireNonNull(bucketOf);
+        if (bucketCount <= 0)
+            throw new IllegalArgumentException("Illegal bucket count: " + bucketCount);
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        final int[] buckets = new int[size];
+        final int[] counts = new int[bucketCount];
+        for (int i = 0; i < size; i++) {
+            int b = bucketOf.applyAsInt((E) elementData[i]);
+            if (b < 0 || b >= bucketCount)
+                throw new IndexOutOfBoundsException("Bucket: " + b + ", Buckets: " + bucketCount);
+            buckets[i] = b;
+            counts[b]++;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return scatter(elementData, size, buckets, counts);
+    }
+
+    /**
+     * Groups the elements of this list by the key {@code key} gives each
+     * element, in two passes like {@link #groupBy(ToIntFunction, int)}:
+     * one numbering the keys and counting their elements, and one copying
+     * the elements into exactly sized lists.  {@code key} is called once
+     * per element.
+     *
+     * @param key gives the key of an element
+     * @param <K> the type of the keys
+     * @return a map from each key to the list of its elements, in list
+     *         order; the keys iterate in the order of their first elements
+     * @throws NullPointerException if the specified function is null
+     */
+    @SuppressWarnings("unchecked")
+    public <K> Map<K, FastArrayList<E>> groupBy(Function<? super E, ? extends K> key) {
+        Objects.requireNonNull(key);
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        final int size = this.size;
+        final int[] buckets = new int[size];
+        final Map<K, Integer> ids = new HashMap<>();
+        final FastArrayList<K> keys = new FastArrayList<>();
+        int[] counts = EMPTY_INTS;
+        for (int i = 0; i < size; i++) {
+            K k = key.apply((E) elementData[i]);
+            Integer id = ids.get(k);
+            if (id == null) {
+                id = keys.size();
+                ids.put(k, id);
+                keys.add(k);
+                if (id == counts.length)
+                    counts = Arrays.copyOf(counts, Math.max(10, id + (id >> 1)));
+            }
+            buckets[i] = id;
+            counts[id]++;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        final int n = keys.size();
+        FastArrayList<FastArrayList<E>> lists =
+                scatter(elementData, size, buckets, Arrays.copyOf(counts, n));
+        Map<K, FastArrayList<E>> result = new LinkedHashMap<>(Math.max((int) (n/.75f) + 1, 16));
+        for (int g = 0; g < n; g++)
+            result.put(keys.get(g), lists.get(g));
+        return result;
+    }
+
+    /**
+     * Copies the first {@code size} elements of {@code elementData} into
+     * lists of exactly {@code counts[b]} elements, element i going to list
+     * {@code buckets[i]}.
+     */
+    private static <E> FastArrayList<FastArrayList<E>> scatter(Object[] elementData, int size,
+                                                               int[] buckets, int[] counts) {
+        final int n = counts.length;
+        final Object[][] arrays = new Object[n][];
+        for (int b = 0; b < n; b++)
+            if (counts[b] != 0)
+                arrays[b] = new Object[counts[b]];
+        final int[] fill = new int[n];
+        for (int i = 0; i < size; i++) {
+            int b = buckets[i];
+            arrays[b][fill[b]++] = elementData[i];
+        }
+        FastArrayList<FastArrayList<E>> result = new FastArrayList<>(n);
+        for (int b = 0; b < n; b++)
+            result.add(adopt(arrays[b], counts[b]));
+        return result;
+    }
+
+    /**
+     * Moves the elements that satisfy {@code filter} to the front of this
+     * list, keeping the relative order of the elements on either side.
+     * The filter is tested once per element, and an exception it throws
+     * leaves the list unmodified.  The elements from the first that does
+     * not satisfy the filter onwards are moved through a scratch array of
+     * those that do not.
+     *
+     * @param filter the predicate to partition the elements by
+     * @return the number of elements that satisfy {@code filter}, which is
+     *         the position of the first that does not after the call
+     * @throws NullPointerException if the specified filter is null
+     */
+    @SuppressWarnings("unchecked")
+    public int stablePartition(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        final BitSet matches = new BitSet(size);
+        int count = 0;
+        for (int i=0; modCount == expectedModCount && i < size; i++) {
+            if (filter.test((E) elementData[i])) {
+                matches.set(i);
+                count++;
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        final int from = matches.nextClearBit(0);
+        if (from == count)
+            return count;  // already partitioned
+        unshare();
+        final Object[] elementData = this.elementData;
+        final Object[] rest = new Object[size - count];
+        for (int i = from, w = from, r = 0; i < size; i++) {
+            Object e = elementData[i];
+            if (matches.get(i))
+                elementData[w++] = e;
+            else
+                rest[r++] = e;
+        }
+        System.arraycopy(rest, 0, elementData, count, rest.length);
+        modCount++;
+        if (listener != null)
+            listener.replaced(elementData, from, size, size);
+        return count;
+    }
+
+    /**
+     * Lists shorter than this are sorted by key with {@code Arrays.sort}
+     * rather than with a radix sort, whose fixed cost per pass does not pay
+     * off on small inputs.
+     */
+    private static final int RADIX_SORT_THRESHOLD = 1 << 12;
+
+    /**
+     * Sorts this list by an {@code int} key of each element, in ascending
+     * key order.  The sort is stable.
+     *
+     * <p>Each key is extracted exactly once, into a primitive array, and the
+     * keys are sorted together with the element positions: by a dual-pivot
+     * quicksort for small lists and by an LSD radix sort otherwise.  No
+     * comparator is called, so this is considerably faster than
+     * {@code sort(Comparator.comparingInt(key))}.
+     *
+     * @param key extracts the sort key of an element
+     * @throws NullPointerException if {@code key} is null
+     * @throws ConcurrentModificationException if the list is modified by
+     *         {@code key}
+     */
+    public void sortByIntKey(ToIntFunction<? super E> key) {
+        Objects.requireNonNull(key);
+        final int size = this.size;
+        if (size < 2) {
+            modCount++;
+            return;
+        }
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        // key in the high half, position in the low half: sorting the
+        // longs sorts by key, then by position, which makes the sort stable
+        long[] packed = new long[size];
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            @SuppressWarnings("unchecked") E e = (E) elementData[i];
+            packed[i] = ((long) key.applyAsInt(e) << 32) | i;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (size < RADIX_SORT_THRESHOLD)
+            Arrays.sort(packed);
+        else
+            radixSortHighInts(packed);
+
+        Object[] sorted = new Object[elementData.length];
+        for (int i = 0; i < size; i++)
+            sorted[i] = elementData[(int) packed[i]];
+        this.elementData = sorted;
+        release();
+        modCount++;
+        if (listener != null && size != 0)
+            listener.replaced(sorted, 0, size, size);
+    }
+
+    /**
+     * Sorts this list by a {@code long} key of each element, in ascending
+     * key order.  The sort is stable.
+     *
+     * <p>Each key is extracted exactly once, into a primitive array, and the
+     * keys are radix sorted together with the element positions.  Key bytes
+     * that are equal across the whole list cost no pass.
+     *
+     * @param key extracts the sort key of an element
+     * @throws NullPointerException if {@code key} is null
+     * @throws ConcurrentModificationException if the list is modified by
+     *         {@code key}
+     */
+    public void sortByLongKey(ToLongFunction<? super E> key) {
+        Objects.requireNonNull(key);
+        final int size = this.size;
+        if (size < 2) {
+            modCount++;
+            return;
+        }
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        long[] keys = new long[size];
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            @SuppressWarnings("unchecked") E e = (E) elementData[i];
+            keys[i] = key.applyAsLong(e);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        int[] order = radixSortLongs(keys);
+
+        Object[] sorted = new Object[elementData.length];
+        for (int i = 0; i < size; i++)
+            sorted[i] = elementData[order[i]];
+        this.elementData = sorted;
+        release();
+        modCount++;
+        if (listener != null && size != 0)
+            listener.replaced(sorted, 0, size, size);
+    }
+
+    /**
+     * Stable LSD radix sort of {@code a} by the signed int in the high half
+     * of each element, one byte per pass.
+     */
+    private static void radixSortHighInts(long[] a) {
+        final int n = a.length;
+        long[] src = a, dst = new long[n];
+        int[] count = new int[256];
+        for (int shift = 32; shift < 64; shift += 8) {
+            // flip the sign bit in the top byte so negative keys sort first
+            final int flip = (shift == 56) ? 0x80 : 0;
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++)
+                count[((int) (src[i] >>> shift) & 0xFF) ^ flip]++;
+            if (count[((int) (src[0] >>> shift) & 0xFF) ^ flip] == n)
+                continue; // every key has the same byte here
+            for (int b = 0, sum = 0; b < 256; b++) {
+                int c = count[b];
+                count[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long v = src[i];
+                dst[count[((int) (v >>> shift) & 0xFF) ^ flip]++] = v;
+            }
+            long[] t = src; src = dst; dst = t;
+        }
+        if (src != a)
+            System.arraycopy(src, 0, a, 0, n);
+    }
+
+    /**
+     * Stable LSD radix sort of signed {@code keys}, which is sorted in place.
+     * Returns the original position of each key in sorted order.
+     */
+    private static int[] radixSortLongs(long[] keys) {
+        final int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        if (n < 2)
+            return order;
+        long[] srcKeys = keys, dstKeys = new long[n];
+        int[] srcOrder = order, dstOrder = new int[n];
+        int[] count = new int[256];
+        for (int shift = 0; shift < 64; shift += 8) {
+            final int flip = (shift == 56) ? 0x80 : 0;
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++)
+                count[((int) (srcKeys[i] >>> shift) & 0xFF) ^ flip]++;
+            if (count[((int) (srcKeys[0] >>> shift) & 0xFF) ^ flip] == n)
+                continue;
+            for (int b = 0, sum = 0; b < 256; b++) {
+                int c = count[b];
+                count[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long k = srcKeys[i];
+                int j = count[((int) (k >>> shift) & 0xFF) ^ flip]++;
+                dstKeys[j] = k;
+                dstOrder[j] = srcOrder[i];
+            }
+            long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            int[] to = srcOrder; srcOrder = dstOrder; dstOrder = to;
+        }
+        if (srcKeys != keys)
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+        return srcOrder;
+    }
+
+    /**
+     * Merges lists that are each sorted according to {@code c} into a new
+     * sorted list, sized exactly to hold all of their elements.  Elements
+     * that compare equal keep the order of the lists they come from, so
+     * merging consecutive sorted runs is stable.
+     *
+     * @param c the comparator the runs are sorted by; {@code null} means
+     *          the elements' natural ordering
+     * @param runs the sorted lists to merge
+     * @param <E> the type of the elements
+     * @return a new list holding the elements of all runs, in sorted order
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public static <E> FastArrayList<E> mergeSorted(Comparator<? super E> c,
+                                                   FastArrayList<? extends E>... runs) {
+        if (c == null)
+            c = (Comparator<? super E>) Comparator.naturalOrder();
+        final Comparator<Object> cmp = (Comparator<Object>) c;
+        final int k = runs.length;
+        // the backing arrays and sizes of the runs, so that the heap does
+        // not pass the generic varargs array around
+        final Object[][] data = new Object[k][];
+        final int[] sizes = new int[k];
+        int total = 0;
+        for (int r = 0; r < k; r++) {
+            data[r] = runs[r].elementData;
+            total += sizes[r] = runs[r].size;
+        }
+        FastArrayList<E> result = new FastArrayList<>(total);
+        final Object[] out = result.elementData;
+        int w = 0;
+
+        // min-heap of run numbers ordered by their current head element,
+        // ties broken by run number
+        final int[] heap = new int[k];
+        final int[] pos = new int[k];
+        int n = 0;
+        for (int r = 0; r < k; r++) {
+            if (sizes[r] > 0)
+                heap[n++] = r;
+        }
+        for (int i = (n >>> 1) - 1; i >= 0; i--)
+            siftDown(heap, i, n, data, pos, cmp);
+        while (n > 0) {
+            int r = heap[0];
+            out[w++] = data[r][pos[r]++];
+            if (pos[r] == sizes[r]) {
+                if (--n == 0)
+                    break;
+                heap[0] = heap[n];
+            }
+            siftDown(heap, 0, n, data, pos, cmp);
+        }
+        result.size = w;
+        return result;
+    }
+
+    private static boolean headLess(int r, int s, Object[][] data, int[] pos,
+                                    Comparator<Object> c) {
+        int d = c.compare(data[r][pos[r]], data[s][pos[s]]);
+        return d < 0 || (d == 0 && r < s);
+    }
+
+    private static void siftDown(int[] heap, int i, int n, Object[][] data,
+                                 int[] pos, Comparator<Object> c) {
+        int r = heap[i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < n && headLess(heap[right], heap[child], data, pos, c))
+                child = right;
+            if (!headLess(heap[child], r, data, pos, c))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = r;
+    }
+
+    /**
+     * Ranges no longer than this are finished off by insertion sort during
+     * selection.
+     */
+    private static final int INSERTION_SELECT_THRESHOLD = 16;
+
+    /**
+     * Rearranges this list so that the element at position {@code k} is the
+     * one that would be there if the list were sorted by {@code c}, every
+     * element before it compares less than or equal to it and every element
+     * after it compares greater than or equal to it.  The order within the
+     * two sides is unspecified.
+     *
+     * <p>This is an in-place quickselect with median-of-three pivots and
+     * runs in expected linear time; it falls back to sorting the remaining
+     * range if partitioning goes badly, so the worst case is
+     * O(n log n).
+     *
+     * @param k the position to fill with its sorted element
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @throws IndexOutOfBoundsException if {@code k} is not a valid index
+     */
+    public void nthElement(int k, Comparator<? super E> c) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException("k: " + k + ", Size: " + size);
+        unshare();
+        final int expectedModCount = modCount;
+        select(elementData, 0, size, k, comparator(c));
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+        if (listener != null)
+            listener.replaced(elementData, 0, size, size);
+    }
+
+    /**
+     * Rearranges this list so that its first {@code k} positions hold, in
+     * sorted order, the {@code k} smallest elements according to
+     * {@code c}.  The order of the remaining elements is unspecified.  This
+     * takes expected O(n + k log k) time, against O(n log n) for sorting the
+     * whole list.
+     *
+     * @param k the number of leading elements to sort
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public void partialSort(int k, Comparator<? super E> c) {
+        if (k < 0)
+            throw new IllegalArgumentException("Illegal k: " + k);
+        if (k >= size) {
+            sort(c);
+            return;
+        }
+        unshare();
+        final int expectedModCount = modCount;
+        if (k > 0) {
+            Comparator<Object> cmp = comparator(c);
+            select(elementData, 0, size, k - 1, cmp);
+            Arrays.sort(elementData, 0, k - 1, cmp);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+        if (listener != null)
+            listener.replaced(elementData, 0, size, size);
+    }
+
+    /**
+     * Returns a new list holding, in sorted order, the {@code k} smallest
+     * elements of this list according to {@code c}, or all of them if the
+     * list is shorter.  This list is not modified.
+     *
+     * <p>The elements are chosen with a bounded max-heap kept in the
+     * backing array of the result, which is then heap sorted in place, so
+     * nothing is allocated beyond the result.  Every element is compared
+     * once with the heap root, and only those smaller than it cost
+     * O(log k); the total is O(n log k) in the worst case and close to
+     * O(n + k log k) for unordered input.  The order of elements that
+     * compare equal is unspecified.
+     *
+     * @param k the number of elements to return
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @return a new list of the {@code k} smallest elements, smallest first
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public FastArrayList<E> topK(int k, Comparator<? super E> c) {
+        if (k < 0)
+            throw new IllegalArgumentException("Illegal k: " + k);
+        final int m = Math.min(k, size);
+        final Comparator<Object> cmp = comparator(c);
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        FastArrayList<E> result = new FastArrayList<>(m);
+        if (m == 0)
+            return result;
+        final Object[] heap = result.elementData;
+        for (int i = 0; i < m; i++) {
+            heap[i] = elementData[i];
+            siftUp(heap, i, cmp);
+        }
+        for (int i = m; i < size; i++) {
+            Object e = elementData[i];
+            if (cmp.compare(e, heap[0]) < 0) {
+                heap[0] = e;
+                siftDown(heap, 0, m, cmp);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        for (int end = m - 1; end > 0; end--) {
+            Object max = heap[0];
+            heap[0] = heap[end];
+            heap[end] = max;
+            siftDown(heap, 0, end, cmp);
+        }
+        result.size = m;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> comparator(Comparator<?> c) {
+        return (Comparator<Object>) (c != null ? c : Comparator.naturalOrder());
+    }
+
+    /**
+     * Partially sorts {@code a[lo, hi)} so that {@code a[k]} holds its
+     * sorted element, with no greater element before it and no smaller one
+     * after it.
+     */
+    private static void select(Object[] a, int lo, int hi, int k,
+                               Comparator<Object> c) {
+        int budget = 2 * (32 - Integer.numberOfLeadingZeros(hi - lo));
+        while (hi - lo > INSERTION_SELECT_THRESHOLD) {
+            if (budget-- == 0) {
+                Arrays.sort(a, lo, hi, c);
+                return;
+            }
+            // median of three, which also places sentinels at both ends
+            int mid = (lo + hi) >>> 1;
+            if (c.compare(a[mid], a[lo]) < 0) swap(a, mid, lo);
+            if (c.compare(a[hi - 1], a[mid]) < 0) {
+                swap(a, hi - 1, mid);
+                if (c.compare(a[mid], a[lo]) < 0) swap(a, mid, lo);
+            }
+            Object pivot = a[mid];
+            int i = lo, j = hi - 1;
+            while (i <= j) {
+                while (c.compare(a[i], pivot) < 0) i++;
+                while (c.compare(a[j], pivot) > 0) j--;
+                if (i <= j)
+                    swap(a, i++, j--);
+            }
+            // now a[lo..j] <= pivot <= a[i..hi), and a(j..i) == pivot
+            if (k <= j)
+                hi = j + 1;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+        for (int i = lo + 1; i < hi; i++) {
+            Object x = a[i];
+            int j = i - 1;
+            for (; j >= lo && c.compare(a[j], x) > 0; j--)
+                a[j + 1] = a[j];
+            a[j + 1] = x;
+        }
+    }
+
+    private static void swap(Object[] a, int i, int j) {
+        Object t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    /** Restores the max-heap order of {@code heap} after adding at {@code i}. */
+    private static void siftUp(Object[] heap, int i, Comparator<Object> c) {
+        Object x = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Object p = heap[parent];
+            if (c.compare(x, p) <= 0)
+                break;
+            heap[i] = p;
+            i = parent;
+        }
+        heap[i] = x;
+    }
+
+    /** Restores the max-heap order of {@code heap[0, n)} below {@code i}. */
+    private static void siftDown(Object[] heap, int i, int n, Comparator<Object> c) {
+        Object x = heap[i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < n && c.compare(heap[right], heap[child]) > 0)
+                child = right;
+            if (c.compare(x, heap[child]) >= 0)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+
+    /**
+     * Reports the runs of set bits in {@code removeSet}, which indexes the
+     * list from {@code offset}, to the listener.  The last run is reported
+     * first, so that every reported range is still valid when the earlier
+     * ones are applied.
+     */
+    private void notifyRemoving(BitSet removeSet, int offset, int size) {
+        int s = size;
+        for (int to = removeSet.length() - 1; to >= 0; ) {
+            int from = removeSet.previousClearBit(to) + 1;
+            listener.removing(elementData, offset + from, offset + to + 1, s);
+            s -= to + 1 - from;
+            to = removeSet.previousSetBit(from - 1);
+        }
+    }
+
+    /**
+     * Starts recording the changes made to this list in a
+     * {@link MutationJournal}, or returns the journal already recording
+     * them.  The journal starts at the current contents of the list: a
+     * replica made now, for example with {@link #clone()}, is brought up to
+     * date by applying the deltas recorded from then on.
+     *
+     * <p>While a journal is attached, every change costs an extra call and
+     * {@link #removeAll}/{@link #retainAll} take the two-pass
+     * {@link #removeIf} route, so that the removed ranges are known.
+     *
+     * @return the journal recording the changes to this list
+     */
+    @SuppressWarnings("unchecked")
+    public MutationJournal<E> enableJournal() {
+        MutationJournal<E> journal =
+                MutationMulticaster.find(listener, MutationJournal.class);
+        if (journal == null) {
+            journal = new MutationJournal<>();
+            listener = MutationMulticaster.add(listener, journal.listener);
+        }
+        return journal;
+    }
+
+    /**
+     * Stops recording changes to this list.  Deltas already recorded remain
+     * available from the journal.
+     */
+    public void disableJournal() {
+        listener = MutationMulticaster.remove(listener, MutationJournal.class);
+    }
+
+    /**
+     * Attaches a {@link RangeIndex} over the given numeric key of the
+     * elements, replacing any range index attached before, so that range
+     * sums, minimums and maximums take O(log n) time.  The index is built
+     * by its first query.
+     *
+     * @param key extracts the indexed key of an element
+     * @return the new index
+     * @throws NullPointerException if {@code key} is null
+     */
+    public RangeIndex<E> enableRangeIndex(ToLongFunction<? super E> key) {
+        Objects.requireNonNull(key);
+        disableRangeIndex();
+        RangeIndex<E> index = new RangeIndex<>(this, key);
+        listener = MutationMulticaster.add(listener, index.listener);
+        return index;
+    }
+
+    /**
+     * Detaches the range index of this list, if any.  The detached index
+     * must not be used any more.
+     */
+    public void disableRangeIndex() {
+        listener = MutationMulticaster.remove(listener, RangeIndex.class);
+    }
+
+    /**
+     * Starts recording the changes made to this list in an {@link OpTrace},
+     * or returns the trace already recording them.  Recording stops
+     * silently once {@code maxOps} changes have been recorded, so a trace
+     * can be left running on a live list.
+     *
+     * @param maxOps the maximum number of changes to record
+     * @return the trace recording the changes to this list
+     * @throws IllegalArgumentException if {@code maxOps} is negative
+     */
+    public OpTrace recordTrace(int maxOps) {
+        OpTrace trace = MutationMulticaster.find(listener, OpTrace.class);
+        if (trace == null) {
+            trace = new OpTrace(size, maxOps);
+            listener = MutationMulticaster.add(listener, trace.listener);
+        }
+        return trace;
+    }
+
+    /**
+     * Stops recording changes to this list.  The changes already recorded
+     * remain available from the trace.
+     */
+    public void stopTrace() {
+        listener = MutationMulticaster.remove(listener, OpTrace.class);
+    }
+
+    /**
+     * Starts maintaining the {@linkplain #fingerprint() content fingerprint}
+     * of this list as it changes.  Has no effect if it is already
+     * maintained.
+     */
+    public void enableFingerprint() {
+        if (MutationMulticaster.find(listener, ContentFingerprint.class) == null)
+            listener = MutationMulticaster.add(listener, new ContentFingerprint(this));
+    }
+
+    /**
+     * Stops maintaining the content fingerprint of this list.
+     */
+    public void disableFingerprint() {
+        listener = MutationMulticaster.remove(listener, ContentFingerprint.class);
+    }
+
+    /**
+     * Returns a 64 bit fingerprint of the contents of this list, computed
+     * from the hash codes of the elements and their order.  Lists that are
+     * {@linkplain #equals equal} have the same fingerprint, so a list whose
+     * fingerprint differs from an earlier one has changed.
+     *
+     * <p>This takes linear time unless {@link #enableFingerprint()} has been
+     * called.  After that, {@code add}, {@code set}, {@code remove} and the
+     * other insertions and removals, at any position, update the
+     * fingerprint in time proportional to the number of elements involved,
+     * and this method takes constant time.  Operations that rewrite
+     * elements in place without reporting the old ones, namely
+     * {@code sort}, {@code replaceAll}, {@code sortByIntKey},
+     * {@code sortByLongKey}, {@code partialSort}, {@code nthElement},
+     * {@code stablePartition} and {@code sort} and {@code replaceAll} on a
+     * sublist, make the next call recompute the fingerprint in linear
+     * time.  A maintained fingerprint does not see
+     * changes to the hash codes of elements already in the list, so it is
+     * not a substitute for {@link #equals} when elements are mutable.
+     *
+     * @return the content fingerprint of this list
+     */
+    public long fingerprint() {
+        ContentFingerprint f =
+                MutationMulticaster.find(listener, ContentFingerprint.class);
+        return (f != null) ? f.value() : ContentFingerprint.compute(elementData, size);
     }
 }
@@ -0,0 +1,315 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * A growable list of {@code boolean} values packed 64 to a {@code long}.
+ *
+ * <p>Compared with a {@code FastArrayList<Boolean>}, which spends a
+ * reference per element, this list spends one bit per element and answers
+ * {@link #cardinality}, {@link #nextSetBit} and the bulk logical operations
+ * a word at a time.  The primitive accessors {@link #getBoolean} and
+ * {@link #setBoolean} do not range check their index, in the same way as
+ * {@link FastArrayList#get}; the boxed {@link List} methods delegate to them.
+ *
+ * <p>Bits past {@link #size()} are always zero.  The list grows like
+ * {@code FastArrayList}, by half of its current capacity.  It supports
+ * appending, replacing and clearing, but not insertion or removal at an
+ * arbitrary position.
+ */
+public class FastBooleanList extends AbstractList<Boolean>
+        implements RandomAccess, Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default initial capacity, in words.
+     */
+    private static final int DEFAULT_CAPACITY = 2;
+
+    private static final long[] EMPTY_WORDS = {};
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * The bits of this list; bit {@code i} is bit {@code i % 64} of word
+     * {@code i / 64}.
+     */
+    long[] words;
+
+    /**
+     * The number of bits in this list.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty list with room for the specified number of bits.
+     *
+     * @param  initialCapacity  the initial capacity in bits
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public FastBooleanList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    initialCapacity);
+        this.words = (initialCapacity == 0)
+                ? EMPTY_WORDS
+                : new long[wordIndex(initialCapacity - 1) + 1];
+    }
+
+    /**
+     * Constructs an empty list.
+     */
+    public FastBooleanList() {
+        this.words = EMPTY_WORDS;
+    }
+
+    private static int wordIndex(int bitIndex) {
+        return bitIndex >>> 6;
+    }
+
+    private void ensureWords(int minWords) {
+        if (minWords - words.length > 0) {
+            int oldCapacity = words.length;
+            int newCapacity = Math.max(DEFAULT_CAPACITY,
+                    oldCapacity + (oldCapacity >> 1));
+            if (newCapacity - minWords < 0)
+                newCapacity = minWords;
+            if (newCapacity - MAX_ARRAY_SIZE > 0)
+                newCapacity = MAX_ARRAY_SIZE;
+            words = Arrays.copyOf(words, newCapacity);
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its current size.
+     */
+    public void trimToSize() {
+        int used = (size == 0) ? 0 : wordIndex(size - 1) + 1;
+        if (used < words.length)
+            words = (used == 0) ? EMPTY_WORDS : Arrays.copyOf(words, used);
+    }
+
+    /**
+     * Returns the number of values in this list.
+     *
+     * @return the number of values in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value at the specified position.
+     *
+     * @param index index of the value to return
+     * @return the value at the specified position
+     */
+    public boolean getBoolean(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Replaces the value at the specified position.
+     *
+     * @param index index of the value to replace
+     * @param value value to be stored at the specified position
+     * @return the value previously at the specified position
+     */
+    public boolean setBoolean(int index, boolean value) {
+        int w = index >>> 6;
+        long mask = 1L << index;
+        long word = words[w];
+        words[w] = value ? (word | mask) : (word & ~mask);
+        return (word & mask) != 0;
+    }
+
+    /**
+     * Appends the specified value to the end of this list.
+     *
+     * @param value value to be appended
+     * @return <tt>true</tt>
+     */
+    public boolean add(boolean value) {
+        modCount++;
+        int i = size;
+        ensureWords(wordIndex(i) + 1);
+        if (value)
+            words[i >>> 6] |= 1L << i;
+        size = i + 1;
+        return true;
+    }
+
+    public Boolean get(int index) {
+        return getBoolean(index);
+    }
+
+    public Boolean set(int index, Boolean value) {
+        return setBoolean(index, value);
+    }
+
+    public boolean add(Boolean value) {
+        return add(value.booleanValue());
+    }
+
+    /**
+     * Removes all of the values from this list.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(words, 0, (size == 0) ? 0 : wordIndex(size - 1) + 1, 0L);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of <tt>true</tt> values in this list.
+     *
+     * @return the number of <tt>true</tt> values
+     */
+    public int cardinality() {
+        int n = 0;
+        final long[] words = this.words;
+        for (int i = 0, end = usedWords(); i < end; i++)
+            n += Long.bitCount(words[i]);
+        return n;
+    }
+
+    private int usedWords() {
+        return (size == 0) ? 0 : wordIndex(size - 1) + 1;
+    }
+
+    /**
+     * Returns the index of the first <tt>true</tt> value at or after
+     * {@code fromIndex}, or -1 if there is none.
+     *
+     * @param fromIndex the index to start from, inclusive
+     * @return the index of the next <tt>true</tt> value, or -1
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative
+     */
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if (fromIndex >= size)
+            return -1;
+        int u = wordIndex(fromIndex);
+        final int end = usedWords();
+        long word = words[u] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0)
+                return (u * 64) + Long.numberOfTrailingZeros(word);
+            if (++u == end)
+                return -1;
+            word = words[u];
+        }
+    }
+
+    /**
+     * Returns the index of the first <tt>false</tt> value at or after
+     * {@code fromIndex}, or {@code size()} if there is none.
+     *
+     * @param fromIndex the index to start from, inclusive
+     * @return the index of the next <tt>false</tt> value, or {@code size()}
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative
+     */
+    public int nextClearBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if (fromIndex >= size)
+            return size;
+        int u = wordIndex(fromIndex);
+        final int end = usedWords();
+        long word = ~words[u] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0)
+                return Math.min(size, (u * 64) + Long.numberOfTrailingZeros(word));
+            if (++u == end)
+                return size;
+            word = ~words[u];
+        }
+    }
+
+    /**
+     * Sets each value of this list to the logical AND of itself and the
+     * value at the same position of {@code other}.  Positions past the end
+     * of {@code other} count as <tt>false</tt>.
+     *
+     * @param other the list to combine with
+     */
+    public void and(FastBooleanList other) {
+        final long[] a = words, b = other.words;
+        int end = usedWords();
+        int common = Math.min(end, other.usedWords());
+        for (int i = 0; i < common; i++)
+            a[i] &= b[i];
+        Arrays.fill(a, common, end, 0L);
+    }
+
+    /**
+     * Sets each value of this list to the logical OR of itself and the
+     * value at the same position of {@code other}.  Positions past the end
+     * of {@code other} count as <tt>false</tt>; the size of this list does
+     * not change.
+     *
+     * @param other the list to combine with
+     */
+    public void or(FastBooleanList other) {
+        final long[] a = words, b = other.words;
+        int common = Math.min(usedWords(), other.usedWords());
+        for (int i = 0; i < common; i++)
+            a[i] |= b[i];
+        clearUnusedBits();
+    }
+
+    /**
+     * Sets each value of this list to the logical XOR of itself and the
+     * value at the same position of {@code other}.  Positions past the end
+     * of {@code other} count as <tt>false</tt>; the size of this list does
+     * not change.
+     *
+     * @param other the list to combine with
+     */
+    public void xor(FastBooleanList other) {
+        final long[] a = words, b = other.words;
+        int common = Math.min(usedWords(), other.usedWords());
+        for (int i = 0; i < common; i++)
+            a[i] ^= b[i];
+        clearUnusedBits();
+    }
+
+    /**
+     * Clears every value of this list whose corresponding value in
+     * {@code other} is <tt>true</tt>.
+     *
+     * @param other the list to combine with
+     */
+    public void andNot(FastBooleanList other) {
+        final long[] a = words, b = other.words;
+        int common = Math.min(usedWords(), other.usedWords());
+        for (int i = 0; i < common; i++)
+            a[i] &= ~b[i];
+    }
+
+    /**
+     * Restores the invariant that bits past size are zero.
+     */
+    private void clearUnusedBits() {
+        if ((size & 63) != 0)
+            words[wordIndex(size - 1)] &= -1L >>> -size;
+    }
+
+    /**
+     * Returns a copy of this list.
+     *
+     * @return a clone of this list
+     */
+    public FastBooleanList clone() {
+        try {
+            FastBooleanList v = (FastBooleanList) super.clone();
+            v.words = Arrays.copyOf(words, usedWords());
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.force;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+
+/**
+ * A growable list of {@code byte} values for assembling and transferring
+ * binary payloads without intermediate copies.
+ *
+ * <p>The bytes are kept in a single buffer, either a heap array or, for a
+ * list created with {@link #direct(int)}, direct memory, which channels
+ * can read and write without copying through a temporary buffer.
+ * {@link #asByteBuffer()} exposes the contents as a {@link ByteBuffer}
+ * view, {@link #writeTo(GatheringByteChannel)} hands them to a channel,
+ * gathering several lists into one system call with
+ * {@link #writeTo(GatheringByteChannel, FastByteList...)}, and
+ * {@link #readFrom} reads from a channel straight into the spare capacity.
+ *
+ * <p>The primitive accessors {@link #getByte} and {@link #setByte} do not
+ * range check their index, in the same way as {@link FastArrayList#get};
+ * the boxed {@link List} methods delegate to them.  The list grows like
+ * {@code FastArrayList}, by half of its current capacity.  It supports
+ * appending, replacing and clearing, but not insertion or removal at an
+ * arbitrary position.
+ */
+public class FastByteList extends AbstractList<Byte> implements RandomAccess {
+
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private static final byte[] EMPTY_BYTES = {};
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * The bytes of this list, or null if they are in direct memory.
+     */
+    private byte[] array;
+
+    /**
+     * The bytes of this list: a wrapper of array, or a direct buffer.
+     * Only absolute accessors are used on it; its position and limit are
+     * meaningless.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The number of bytes in this list.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param  initialCapacity  the initial capacity of the list
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public FastByteList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    initialCapacity);
+        this.array = (initialCapacity == 0) ? EMPTY_BYTES : new byte[initialCapacity];
+        this.buffer = ByteBuffer.wrap(array);
+    }
+
+    /**
+     * Constructs an empty list.
+     */
+    public FastByteList() {
+        this(0);
+    }
+
+    private FastByteList(ByteBuffer direct) {
+        this.buffer = direct;
+    }
+
+    /**
+     * Returns an empty list that keeps its bytes in direct memory.
+     *
+     * @param  initialCapacity  the initial capacity of the list
+     * @return a new direct list
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public static FastByteList direct(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    initialCapacity);
+        return new FastByteList(ByteBuffer.allocateDirect(initialCapacity));
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list keeps its bytes in direct memory.
+     *
+     * @return <tt>true</tt> if this list is direct
+     */
+    public boolean isDirect() {
+        return array == null;
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, so that it can
+     * hold at least {@code minCapacity} bytes.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity - buffer.capacity() > 0)
+            grow(minCapacity);
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = buffer.capacity();
+        int newCapacity = Math.max(DEFAULT_CAPACITY,
+                oldCapacity + (oldCapacity >> 1));
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            if (minCapacity < 0) // overflow
+                throw new OutOfMemoryError();
+            newCapacity = (minCapacity > MAX_ARRAY_SIZE) ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+        }
+        resize(newCapacity);
+    }
+
+    private void resize(int newCapacity) {
+        if (array != null) {
+            array = Arrays.copyOf(array, newCapacity);
+            buffer = ByteBuffer.wrap(array);
+        } else {
+            ByteBuffer b = ByteBuffer.allocateDirect(newCapacity);
+            b.put(view(0, size));
+            buffer = b;
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its current size.
+     */
+    public void trimToSize() {
+        if (size < buffer.capacity())
+            resize(size);
+    }
+
+    /**
+     * Returns a fresh view of bytes {@code [from, to)} of the buffer.
+     */
+    private ByteBuffer view(int from, int to) {
+        ByteBuffer b = buffer.duplicate();
+        // through Buffer, whose limit and position return Buffer on Java 8
+        ((Buffer) b).limit(to).position(from);
+        return b;
+    }
+
+    /**
+     * Returns the number of bytes in this list.
+     *
+     * @return the number of bytes in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the byte at the specified position.
+     *
+     * @param index index of the byte to return
+     * @return the byte at the specified position
+     */
+    public byte getByte(int index) {
+        return (array != null) ? array[index] : buffer.get(index);
+    }
+
+    /**
+     * Replaces the byte at the specified position.
+     *
+     * @param index index of the byte to replace
+     * @param value byte to be stored at the specified position
+     * @return the byte previously at the specified position
+     */
+    public byte setByte(int index, byte value) {
+        byte oldValue = getByte(index);
+        if (array != null)
+            array[index] = value;
+        else
+            buffer.put(index, value);
+        return oldValue;
+    }
+
+    /**
+     * Appends the specified byte to the end of this list.
+     *
+     * @param value byte to be appended
+     * @return <tt>true</tt>
+     */
+    public boolean add(byte value) {
+        modCount++;
+        int i = size;
+        if (i == buffer.capacity())
+            grow(i + 1);
+        if (array != null)
+            array[i] = value;
+        else
+            buffer.put(i, value);
+        size = i + 1;
+        return true;
+    }
+
+    /**
+     * Appends {@code length} bytes of {@code src}, starting at
+     * {@code offset}.
+     *
+     * @param src the bytes to append
+     * @param offset position of the first byte to append
+     * @param length number of bytes to append
+     * @throws IndexOutOfBoundsException if the range is not within
+     *         {@code src}
+     */
+    public void add(byte[] src, int offset, int length) {
+        modCount++;
+        ensureCapacity(size + length);
+        if (array != null)
+            System.arraycopy(src, offset, array, size, length);
+        else
+            view(size, size + length).put(src, offset, length);
+        size += length;
+    }
+
+    /**
+     * Appends all of {@code src}.
+     *
+     * @param src the bytes to append
+     */
+    public void add(byte[] src) {
+        add(src, 0, src.length);
+    }
+
+    /**
+     * Appends the remaining bytes of {@code src}, advancing its position
+     * to its limit.
+     *
+     * @param src the bytes to append
+     */
+    public void add(ByteBuffer src) {
+        modCount++;
+        int length = src.remaining();
+        ensureCapacity(size + length);
+        view(size, size + length).put(src);
+        size += length;
+    }
+
+    public Byte get(int index) {
+        return getByte(index);
+    }
+
+    public Byte set(int index, Byte value) {
+        return setByte(index, value);
+    }
+
+    public boolean add(Byte value) {
+        return add(value.byteValue());
+    }
+
+    /**
+     * Removes all of the bytes from this list.  The capacity is kept.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    /**
+     * Returns a copy of the bytes of this list.
+     *
+     * @return a new array holding the bytes of this list
+     */
+    public byte[] toByteArray() {
+        if (array != null)
+            return Arrays.copyOf(array, size);
+        byte[] a = new byte[size];
+        view(0, size).get(a);
+        return a;
+    }
+
+    /**
+     * Returns a buffer that shares the bytes of this list, with position 0
+     * and limit and capacity {@link #size()}.  No bytes are copied.
+     * Changes to either are visible in the other until this list grows
+     * past its capacity, after which the buffer keeps the old bytes.
+     *
+     * @return a buffer viewing the contents of this list
+     */
+    public ByteBuffer asByteBuffer() {
+        return asByteBuffer(0, size);
+    }
+
+    /**
+     * Returns a buffer that shares bytes {@code [from, to)} of this list.
+     *
+     * @param from position of the first byte of the view
+     * @param to one past the position of the last byte of the view
+     * @return a buffer viewing the range
+     * @throws IndexOutOfBoundsException if the range is not within the
+     *         list
+     * @see #asByteBuffer()
+     */
+    public ByteBuffer asByteBuffer(int from, int to) {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to +
+                    ", Size: " + size);
+        return view(from, to).slice();
+    }
+
+    /**
+     * Writes the bytes of this list to {@code channel}.
+     *
+     * @param channel the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     * @see #writeTo(GatheringByteChannel, FastByteList...)
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        return writeTo(channel, this);
+    }
+
+    /**
+     * Writes the bytes of {@code lists}, one after the other, to
+     * {@code channel} with gathering writes, so that a payload assembled
+     * from several lists reaches the channel without being concatenated
+     * first.
+     *
+     * <p>A blocking channel takes every byte.  A non-blocking channel may
+     * take only some, in which case this method returns when the channel
+     * accepts no more; the caller can write the rest later with
+     * {@link #asByteBuffer(int, int)} views.
+     *
+     * @param channel the channel to write to
+     * @param lists the lists whose bytes to write
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public static long writeTo(GatheringByteChannel channel, FastByteList... lists)
+            throws IOException {
+        ByteBuffer[] srcs = new ByteBuffer[lists.length];
+        long remaining = 0;
+        for (int i = 0; i < lists.length; i++) {
+            srcs[i] = lists[i].view(0, lists[i].size);
+            remaining += lists[i].size;
+        }
+        long written = 0;
+        int first = 0;
+        while (written < remaining) {
+            long n = channel.write(srcs, first, srcs.length - first);
+            if (n <= 0)
+                break;
+            written += n;
+            while (first < srcs.length && !srcs[first].hasRemaining())
+                first++;
+        }
+        return written;
+    }
+
+    /**
+     * Reads up to {@code max} bytes from {@code channel} with a single read,
+     * appending them directly into the spare capacity of this list, which
+     * is grown first if needed.
+     *
+     * @param channel the channel to read from
+     * @param max the maximum number of bytes to read
+     * @return the number of bytes read, possibly zero, or -1 if the channel
+     *         has reached end-of-stream
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code max} is negative
+     */
+    public int readFrom(ReadableByteChannel channel, int max) throws IOException {
+        if (max < 0)
+            throw new IllegalArgumentException("Illegal max: " + max);
+        ensureCapacity(size + max);
+        int n = channel.read(view(size, size + max));
+        if (n > 0) {
+            modCount++;
+            size += n;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,121 @@
+package com.force;
+
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Collectors and terminal operations that build {@link FastArrayList}s
+ * from streams while copying each element as few times as possible.
+ *
+ * <p>{@code Collectors.toList()} on a parallel stream merges the lists of
+ * the forks with repeated {@code addAll}, copying elements once per level
+ * of the fork tree.  The collectors here keep the lists of the forks as a
+ * chain of chunks instead, which combining only links together, and copy
+ * every element once into a presized array at the end.
+ *
+ * <p>A {@code Collector} is not told how the stream was split, so it
+ * cannot write the forks' results straight into one array.  When that
+ * matters, {@link #collect(Stream)} goes through {@link Stream#toArray()},
+ * which for a {@code SIZED} parallel stream does exactly that, writing
+ * each fork into its own range of one presized array, and adopts that
+ * array as the backing array of the result.
+ */
+public final class FastCollectors {
+
+    private FastCollectors() {
+    }
+
+    /**
+     * The container of the collectors: the elements are those of
+     * {@code chunks}, in order, and new elements go to the last chunk.
+     */
+    static final class Chunks<T> {
+        final FastArrayList<FastArrayList<T>> chunks = new FastArrayList<>(1);
+        FastArrayList<T> last;
+
+        Chunks(int initialCapacity) {
+            chunks.add(last = new FastArrayList<>(initialCapacity));
+        }
+
+        void add(T t) {
+            last.add(t);
+        }
+
+        Chunks<T> combine(Chunks<T> other) {
+            if (other.last.isEmpty() && other.chunks.size() == 1)
+                return this;
+            if (last.isEmpty() && chunks.size() == 1)
+                return other;
+            chunks.addAll(other.chunks);
+            last = other.last;
+            return this;
+        }
+
+        FastArrayList<T> finish() {
+            int n = chunks.size();
+            if (n == 1)
+                return last;
+            long total = 0;
+            for (int i = 0; i < n; i++)
+                total += chunks.get(i).size();
+            if (total > Integer.MAX_VALUE - 8)
+                throw new OutOfMemoryError("Required array size too large");
+            FastArrayList<T> result = new FastArrayList<>((int) total);
+            for (int i = 0; i < n; i++) {
+                FastArrayList<T> chunk = chunks.get(i);
+                result.appendArray(chunk.elementData, 0, chunk.size());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns a {@code Collector} that accumulates the input elements into a
+     * new {@code FastArrayList}, in encounter order.  Each element is copied
+     * at most once after it is first added, when the results of parallel
+     * forks are concatenated, and not at all for a sequential stream.
+     *
+     * @param <T> the type of the input elements
+     * @return a collector into a {@code FastArrayList}
+     */
+    public static <T> Collector<T, ?, FastArrayList<T>> toFastList() {
+        return toFastList(10);
+    }
+
+    /**
+     * Returns a {@code Collector} like {@link #toFastList()} whose
+     * containers start with room for {@code sizeHint} elements.  For a
+     * sequential stream of about {@code sizeHint} elements the result is
+     * built in place without ever growing.  Every fork of a parallel stream
+     * gets a container of its own, so the hint should then be the expected
+     * number of elements per fork.
+     *
+     * @param sizeHint the initial capacity of each container
+     * @param <T> the type of the input elements
+     * @return a collector into a {@code FastArrayList}
+     * @throws IllegalArgumentException if {@code sizeHint} is negative
+     */
+    public static <T> Collector<T, ?, FastArrayList<T>> toFastList(int sizeHint) {
+        if (sizeHint < 0)
+            throw new IllegalArgumentException("Illegal size hint: " + sizeHint);
+        return Collector.of(() -> new Chunks<T>(sizeHint),
+                Chunks::add, Chunks::combine, Chunks::finish);
+    }
+
+    /**
+     * Collects the elements of {@code stream} into a new
+     * {@code FastArrayList}, in encounter order.  The elements are
+     * gathered with {@link Stream#toArray()}, whose result becomes the
+     * backing array of the list: a {@code SIZED} stream, sequential or
+     * parallel, is written once into a presized array, and any other stream
+     * is concatenated once at the end.
+     *
+     * @param stream the stream to collect
+     * @param <T> the type of the stream elements
+     * @return a new list of the elements of the stream
+     */
+    public static <T> FastArrayList<T> collect(Stream<? extends T> stream) {
+        Object[] a = stream.toArray();
+        return FastArrayList.adopt(a, a.length);
+    }
+}
@@ -0,0 +1,179 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * Static factories for the lists in this package.
+ */
+public final class FastLists {
+
+    private FastLists() {
+    }
+
+    /**
+     * Returns a new, empty list that stores up to {@value CompactList#INLINE}
+     * elements in fields of the list object itself, without a backing
+     * array, and moves them to a {@link FastArrayList} once it grows past
+     * that.  An empty compact list takes about half the memory of an empty
+     * {@code FastArrayList} that has had an element added to it, which adds
+     * up when most lists hold only a handful of elements.
+     *
+     * <p>Once the list has moved to an array it stays there until it is
+     * {@linkplain List#clear() cleared}, so that a list hovering around the
+     * threshold does not copy its elements back and forth.
+     *
+     * @param <E> the type of elements held in the list
+     * @return a new compact list
+     */
+    public static <E> List<E> compact() {
+        return new CompactList<>();
+    }
+
+    /**
+     * The list returned by {@link #compact()}.  While {@code array} is null
+     * the elements are {@code e0} to {@code e3}, of which the first
+     * {@code size} are used; otherwise they are the elements of
+     * {@code array} and the fields are null.
+     */
+    static final class CompactList<E> extends AbstractList<E>
+            implements RandomAccess, java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of elements held in fields.
+         */
+        static final int INLINE = 4;
+
+        private E e0, e1, e2, e3;
+        private int size;
+        private FastArrayList<E> array;
+
+        CompactList() {
+        }
+
+        private E inline(int index) {
+            switch (index) {
+                case 0: return e0;
+                case 1: return e1;
+                case 2: return e2;
+                case 3: return e3;
+                default: throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+            }
+        }
+
+        private void setInline(int index, E element) {
+            switch (index) {
+                case 0: e0 = element; break;
+                case 1: e1 = element; break;
+                case 2: e2 = element; break;
+                case 3: e3 = element; break;
+                default: throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+            }
+        }
+
+        private String outOfBoundsMsg(int index) {
+            return "Index: "+index+", Size: "+size();
+        }
+
+        private void rangeCheck(int index) {
+            if (index >= size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+
+        /**
+         * Moves the inline elements to a new array-backed list.
+         */
+        private FastArrayList<E> spill() {
+            FastArrayList<E> a = new FastArrayList<>(INLINE << 1);
+            for (int i = 0; i < size; i++)
+                a.add(inline(i));
+            e0 = e1 = e2 = e3 = null;
+            size = 0;
+            return array = a;
+        }
+
+        public int size() {
+            return (array != null) ? array.size() : size;
+        }
+
+        public E get(int index) {
+            if (array != null)
+                return array.get(index);
+            rangeCheck(index);
+            return inline(index);
+        }
+
+        public E set(int index, E element) {
+            if (array != null)
+                return array.set(index, element);
+            rangeCheck(index);
+            E oldValue = inline(index);
+            setInline(index, element);
+            return oldValue;
+        }
+
+        public boolean add(E e) {
+            modCount++;
+            if (array != null)
+                return array.add(e);
+            if (size == INLINE)
+                return spill().add(e);
+            setInline(size++, e);
+            return true;
+        }
+
+        public void add(int index, E element) {
+            if (array != null) {
+                array.add(index, element);
+                modCount++;
+                return;
+            }
+            if (index > size || index < 0)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+            modCount++;
+            if (size == INLINE) {
+                spill().add(index, element);
+                return;
+            }
+            for (int i = size; i > index; i--)
+                setInline(i, inline(i - 1));
+            setInline(index, element);
+            size++;
+        }
+
+        public E remove(int index) {
+            if (array != null) {
+                E oldValue = array.remove(index);
+                modCount++;
+                return oldValue;
+            }
+            rangeCheck(index);
+            modCount++;
+            E oldValue = inline(index);
+            for (int i = index + 1; i < size; i++)
+                setInline(i - 1, inline(i));
+            setInline(--size, null);
+            return oldValue;
+        }
+
+        public int indexOf(Object o) {
+            if (array != null)
+                return array.indexOf(o);
+            for (int i = 0; i < size; i++)
+                if (Objects.equals(o, inline(i)))
+                    return i;
+            return -1;
+        }
+
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        public void clear() {
+            modCount++;
+            array = null;
+            e0 = e1 = e2 = e3 = null;
+            size = 0;
+        }
+    }
+}
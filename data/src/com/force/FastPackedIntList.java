@@ -0,0 +1,228 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * A growable list of small unsigned integers stored at a fixed width of 1
+ * to 32 bits per value, packed into a {@code long[]}.
+ *
+ * <p>This is the compact replacement for {@code FastArrayList<Byte>} or
+ * {@code FastArrayList<Integer>} holding flags, enum ordinals and similar
+ * small codes: a list of ordinals below 16 takes 4 bits per value.  Only
+ * the low {@link #bitsPerValue()} bits of a stored value are kept, and
+ * {@link #getInt} returns them zero-extended, except at width 32 where the
+ * full {@code int} is preserved.
+ *
+ * <p>The primitive accessors {@link #getInt} and {@link #setInt} do not
+ * range check their index, in the same way as {@link FastArrayList#get};
+ * the boxed {@link List} methods delegate to them.  The list grows like
+ * {@code FastArrayList}, by half of its current capacity.  It supports
+ * appending, replacing and clearing, but not insertion or removal at an
+ * arbitrary position.
+ */
+public class FastPackedIntList extends AbstractList<Integer>
+        implements RandomAccess, Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default initial capacity, in values.
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final long[] EMPTY_WORDS = {};
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int bitsPerValue;
+
+    private final long mask;
+
+    long[] words;
+
+    /**
+     * The number of values in this list.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty list storing values of the given width.
+     *
+     * @param  bitsPerValue  the number of bits stored per value, 1 to 32
+     * @throws IllegalArgumentException if {@code bitsPerValue} is out of
+     *         range
+     */
+    public FastPackedIntList(int bitsPerValue) {
+        this(bitsPerValue, 0);
+    }
+
+    /**
+     * Constructs an empty list storing values of the given width, with room
+     * for {@code initialCapacity} values.
+     *
+     * @param  bitsPerValue  the number of bits stored per value, 1 to 32
+     * @param  initialCapacity  the initial capacity in values
+     * @throws IllegalArgumentException if {@code bitsPerValue} is out of
+     *         range or the initial capacity is negative
+     */
+    public FastPackedIntList(int bitsPerValue, int initialCapacity) {
+        if (bitsPerValue < 1 || bitsPerValue > 32)
+            throw new IllegalArgumentException("Illegal bits per value: " +
+                    bitsPerValue);
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    initialCapacity);
+        this.bitsPerValue = bitsPerValue;
+        this.mask = (1L << bitsPerValue) - 1;
+        this.words = (initialCapacity == 0)
+                ? EMPTY_WORDS
+                : new long[wordsFor(initialCapacity)];
+    }
+
+    /**
+     * Returns the smallest width that can hold every value in
+     * {@code [0, maxValue]}, for use with the constructors.
+     *
+     * @param maxValue the largest value to be stored
+     * @return the number of bits needed, at least 1
+     */
+    public static int bitsRequired(int maxValue) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+    }
+
+    private int wordsFor(int values) {
+        return (int) (((long) values * bitsPerValue + 63) >>> 6);
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        int minWords = wordsFor(minCapacity);
+        if (minWords - words.length > 0) {
+            int oldCapacity = words.length;
+            int newCapacity = Math.max(wordsFor(DEFAULT_CAPACITY),
+                    oldCapacity + (oldCapacity >> 1));
+            if (newCapacity - minWords < 0)
+                newCapacity = minWords;
+            if (newCapacity - MAX_ARRAY_SIZE > 0)
+                newCapacity = MAX_ARRAY_SIZE;
+            words = Arrays.copyOf(words, newCapacity);
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its current size.
+     */
+    public void trimToSize() {
+        int used = wordsFor(size);
+        if (used < words.length)
+            words = (used == 0) ? EMPTY_WORDS : Arrays.copyOf(words, used);
+    }
+
+    /**
+     * Returns the number of bits stored per value.
+     *
+     * @return the number of bits stored per value
+     */
+    public int bitsPerValue() {
+        return bitsPerValue;
+    }
+
+    /**
+     * Returns the number of values in this list.
+     *
+     * @return the number of values in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value at the specified position.
+     *
+     * @param index index of the value to return
+     * @return the value at the specified position
+     */
+    public int getInt(int index) {
+        long bit = (long) index * bitsPerValue;
+        int w = (int) (bit >>> 6);
+        int off = (int) bit & 63;
+        long v = words[w] >>> off;
+        if (off + bitsPerValue > 64)
+            v |= words[w + 1] << (64 - off);
+        return (int) (v & mask);
+    }
+
+    /**
+     * Replaces the value at the specified position.  Only the low
+     * {@link #bitsPerValue()} bits of {@code value} are stored.
+     *
+     * @param index index of the value to replace
+     * @param value value to be stored at the specified position
+     * @return the value previously at the specified position
+     */
+    public int setInt(int index, int value) {
+        long v = value & mask;
+        long bit = (long) index * bitsPerValue;
+        int w = (int) (bit >>> 6);
+        int off = (int) bit & 63;
+        final long[] words = this.words;
+        long old = words[w] >>> off;
+        words[w] = (words[w] & ~(mask << off)) | (v << off);
+        if (off + bitsPerValue > 64) {
+            int shift = 64 - off;
+            old |= words[w + 1] << shift;
+            words[w + 1] = (words[w + 1] & ~(mask >>> shift)) | (v >>> shift);
+        }
+        return (int) (old & mask);
+    }
+
+    /**
+     * Appends the specified value to the end of this list.  Only the low
+     * {@link #bitsPerValue()} bits of {@code value} are stored.
+     *
+     * @param value value to be appended
+     * @return <tt>true</tt>
+     */
+    public boolean addInt(int value) {
+        modCount++;
+        ensureCapacityInternal(size + 1);
+        setInt(size++, value);
+        return true;
+    }
+
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    public Integer set(int index, Integer value) {
+        return setInt(index, value);
+    }
+
+    public boolean add(Integer value) {
+        return addInt(value);
+    }
+
+    /**
+     * Removes all of the values from this list.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(words, 0, wordsFor(size), 0L);
+        size = 0;
+    }
+
+    /**
+     * Returns a copy of this list.
+     *
+     * @return a clone of this list
+     */
+    public FastPackedIntList clone() {
+        try {
+            FastPackedIntList v = (FastPackedIntList) super.clone();
+            v.words = Arrays.copyOf(words, wordsFor(size));
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.force;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads files of records into {@link FastArrayList}s in parallel, for
+ * large newline-delimited or fixed-width binary files read at startup.
+ *
+ * <p>The file is cut into chunks at record boundaries, a few per thread so
+ * that uneven chunks balance out.  Every chunk is memory-mapped and parsed
+ * by one thread into a list of its own, and the lists are then copied once,
+ * in file order, into the presized backing array of the result.  Records
+ * are parsed by a {@link RecordParser}; {@link #strings} and
+ * {@link #csvFields} parse text lines.
+ *
+ * <p>A line ends at {@code '\n'}, and a {@code '\r'} before it is not part
+ * of the line.  The last line of a file needs no terminator.  Lines are
+ * found by their bytes, so text must be in a charset that encodes
+ * {@code '\n'} as that single byte and nowhere else, such as UTF-8 or
+ * ISO-8859-1.  A chunk must fit in a mapping of 2GB, which a line longer
+ * than 1GB can break.
+ */
+public final class MappedLoader {
+
+    private static final long MIN_CHUNK = 1 << 20;
+    private static final long MAX_CHUNK = 1 << 30;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private MappedLoader() {
+    }
+
+    /** Parses a mapped chunk into a list. */
+    private interface ChunkParser<T> {
+        void parse(ByteBuffer chunk, FastArrayList<T> out);
+    }
+
+    /**
+     * Loads the lines of {@code file}, parsed by {@code parser}, using as
+     * many threads as there are processors.
+     *
+     * @param file the file to load
+     * @param parser parses each line
+     * @param <T> the type of the elements
+     * @return a new list of the non-null results of {@code parser}, in file
+     *         order
+     * @throws IOException if an I/O error occurs
+     */
+    public static <T> FastArrayList<T> loadLines(Path file, RecordParser<? extends T> parser)
+            throws IOException {
+        return loadLines(file, parser, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the lines of {@code file}, parsed by {@code parser}, using up
+     * to {@code parallelism} threads.
+     *
+     * @param file the file to load
+     * @param parser parses each line
+     * @param parallelism the maximum number of threads to use
+     * @param <T> the type of the elements
+     * @return a new list of the non-null results of {@code parser}, in file
+     *         order
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public static <T> FastArrayList<T> loadLines(Path file, RecordParser<? extends T> parser,
+                                                 int parallelism) throws IOException {
+        Objects.requireNonNull(parser);
+        checkParallelism(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = lineBounds(channel, size, chunkSize(size, parallelism));
+            return load(channel, bounds, ByteOrder.BIG_ENDIAN, parallelism,
+                    (chunk, out) -> parseLines(chunk, parser, out));
+        }
+    }
+
+    /**
+     * Loads the records of {@code recordSize} bytes that {@code file}
+     * consists of, parsed by {@code parser}, using as many threads as there
+     * are processors.
+     *
+     * @param file the file to load
+     * @param recordSize the number of bytes in a record
+     * @param order the byte order of the buffers given to {@code parser}
+     * @param parser parses each record
+     * @param <T> the type of the elements
+     * @return a new list of the non-null results of {@code parser}, in file
+     *         order
+     * @throws IOException if an I/O error occurs, or the size of the file
+     *         is not a multiple of {@code recordSize}
+     * @throws IllegalArgumentException if {@code recordSize} is not positive
+     */
+    public static <T> FastArrayList<T> loadRecords(Path file, int recordSize, ByteOrder order,
+                                                   RecordParser<? extends T> parser)
+            throws IOException {
+        return loadRecords(file, recordSize, order, parser,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the records of {@code recordSize} bytes that {@code file}
+     * consists of, parsed by {@code parser}, using up to
+     * {@code parallelism} threads.
+     *
+     * @param file the file to load
+     * @param recordSize the number of bytes in a record
+     * @param order the byte order of the buffers given to {@code parser}
+     * @param parser parses each record
+     * @param parallelism the maximum number of threads to use
+     * @param <T> the type of the elements
+     * @return a new list of the non-null results of {@code parser}, in file
+     *         order
+     * @throws IOException if an I/O error occurs, or the size of the file
+     *         is not a multiple of {@code recordSize}
+     * @throws IllegalArgumentException if {@code recordSize} or
+     *         {@code parallelism} is not positive
+     */
+    public static <T> FastArrayList<T> loadRecords(Path file, int recordSize, ByteOrder order,
+                                                   RecordParser<? extends T> parser,
+                                                   int parallelism) throws IOException {
+        Objects.requireNonNull(order);
+        Objects.requireNonNull(parser);
+        if (recordSize <= 0)
+            throw new IllegalArgumentException("Illegal record size: " + recordSize);
+        checkParallelism(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % recordSize != 0)
+                throw new IOException("Size " + size + " of " + file +
+                        " is not a multiple of the record size " + recordSize);
+            long chunk = Math.max(recordSize, chunkSize(size, parallelism) / recordSize * recordSize);
+            long[] bounds = new long[(int) ((size + chunk - 1) / chunk) + 1];
+            for (int i = 1; i < bounds.length; i++)
+                bounds[i] = Math.min(size, i * chunk);
+            return load(channel, bounds, order, parallelism,
+                    (buf, out) -> parseRecords(buf, recordSize, parser, out));
+        }
+    }
+
+    private static void checkParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+    }
+
+    /**
+     * Returns the nominal size of the chunks of a file of {@code size}
+     * bytes: about four per thread, within [MIN_CHUNK, MAX_CHUNK].
+     */
+    private static long chunkSize(long size, int parallelism) {
+        return Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, size / (4L * parallelism)));
+    }
+
+    /**
+     * Returns the boundaries of chunks of about {@code chunk} bytes that
+     * start at the start of a line, from 0 to {@code size}.
+     */
+    private static long[] lineBounds(FileChannel channel, long size, long chunk)
+            throws IOException {
+        long[] bounds = new long[(int) (size / chunk) + 2];
+        ByteBuffer scan = ByteBuffer.allocate(8192);
+        int n = 1;
+        for (long nominal = chunk; nominal < size; nominal += chunk) {
+            long b = Math.max(nominal, bounds[n - 1]);
+            b = (b < size) ? nextLine(channel, b, size, scan) : size;
+            if (b > bounds[n - 1] && b < size)
+                bounds[n++] = b;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Returns the position of the first line starting at or after
+     * {@code pos}, or {@code size} if there is none.
+     */
+    private static long nextLine(FileChannel channel, long pos, long size, ByteBuffer scan)
+            throws IOException {
+        long p = pos - 1;  // a line starts at pos if the byte before is '\n'
+        while (p < size) {
+            ((Buffer) scan).clear();
+            int read = channel.read(scan, p);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++)
+                if (scan.get(i) == '\n')
+                    return p + i + 1;
+            p += read;
+        }
+        return size;
+    }
+
+    private static <T> void parseLines(ByteBuffer chunk, RecordParser<? extends T> parser,
+                                       FastArrayList<T> out) {
+        final int end = chunk.capacity();
+        int start = 0;
+        while (start < end) {
+            int i = start;
+            while (i < end && chunk.get(i) != '\n')
+                i++;
+            int stop = (i > start && chunk.get(i - 1) == '\r') ? i - 1 : i;
+            T t = parser.parse(chunk, start, stop - start);
+            if (t != null)
+                out.add(t);
+            start = i + 1;
+        }
+    }
+
+    private static <T> void parseRecords(ByteBuffer chunk, int recordSize,
+                                         RecordParser<? extends T> parser, FastArrayList<T> out) {
+        final int end = chunk.capacity();
+        out.ensureCapacity(end / recordSize);
+        for (int start = 0; start < end; start += recordSize) {
+            T t = parser.parse(chunk, start, recordSize);
+            if (t != null)
+                out.add(t);
+        }
+    }
+
+    /**
+     * Maps and parses the chunks between {@code bounds} on up to
+     * {@code parallelism} threads, and concatenates their lists.
+     */
+    private static <T> FastArrayList<T> load(FileChannel channel, long[] bounds, ByteOrder order,
+                                             int parallelism, ChunkParser<T> parser)
+            throws IOException {
+        final int n = bounds.length - 1;
+        List<Callable<FastArrayList<T>>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final long from = bounds[i], length = bounds[i + 1] - from;
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Record at " + from + " is too long to map");
+            tasks.add(() -> {
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+                chunk.order(order);
+                FastArrayList<T> out = new FastArrayList<>();
+                parser.parse(chunk, out);
+                return out;
+            });
+        }
+
+        List<FastArrayList<T>> parts = new ArrayList<>(n);
+        if (parallelism == 1 || n <= 1) {
+            try {
+                for (Callable<FastArrayList<T>> task : tasks)
+                    parts.add(task.call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);  // not thrown by the tasks
+            }
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, n), r -> {
+                Thread t = new Thread(r, "force-loader-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                for (Future<FastArrayList<T>> f : pool.invokeAll(tasks))
+                    parts.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        long total = 0;
+        for (FastArrayList<T> part : parts)
+            total += part.size();
+        if (total > MAX_ARRAY_SIZE)
+            throw new OutOfMemoryError("Required array size too large");
+        Object[] a = new Object[(int) total];
+        int at = 0;
+        for (FastArrayList<T> part : parts) {
+            System.arraycopy(part.elementData, 0, a, at, part.size());
+            at += part.size();
+        }
+        return FastArrayList.adopt(a, at);
+    }
+
+    /**
+     * Returns a parser that decodes each record into a {@code String}.
+     *
+     * @param charset the charset of the records
+     * @return a parser of strings
+     */
+    public static RecordParser<String> strings(Charset charset) {
+        Objects.requireNonNull(charset);
+        return (buffer, offset, length) -> new String(bytes(buffer, offset, length), charset);
+    }
+
+    /**
+     * Returns a parser that splits each record into its fields, separated
+     * by {@code delimiter}.  A field may be quoted with {@code '"'}, in
+     * which case it may contain the delimiter, and a doubled quote stands
+     * for one quote.  Quoted fields cannot span lines.
+     *
+     * @param delimiter the character separating fields
+     * @param charset the charset of the records
+     * @return a parser of arrays of fields
+     */
+    public static RecordParser<String[]> csvFields(char delimiter, Charset charset) {
+        Objects.requireNonNull(charset);
+        return (buffer, offset, length) ->
+                splitCsv(new String(bytes(buffer, offset, length), charset), delimiter);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+        byte[] b = new byte[length];
+        ((Buffer) buffer).limit(buffer.capacity()).position(offset);
+        buffer.get(b);
+        return b;
+    }
+
+    static String[] splitCsv(String line, char delimiter) {
+        FastArrayList<String> fields = new FastArrayList<>();
+        StringBuilder field = new StringBuilder();
+        final int n = line.length();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < n && line.charAt(i) == '"') {
+                for (i++; i < n; i++) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < n && line.charAt(i + 1) == '"')
+                            i++;
+                        else
+                            break;
+                    }
+                    field.append(c);
+                }
+                i++;  // past the closing quote
+                while (i < n && line.charAt(i) != delimiter)
+                    field.append(line.charAt(i++));
+            } else {
+                while (i < n && line.charAt(i) != delimiter)
+                    field.append(line.charAt(i++));
+            }
+            fields.add(field.toString());
+            if (i >= n)
+                return fields.toArray(new String[fields.size()]);
+            i++;  // past the delimiter
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.force;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A multi-producer, single-consumer handoff queue built from a linked chain
+ * of fixed-size array segments.
+ *
+ * <p>Producers claim a slot with a single atomic increment on the tail
+ * segment, store their element and publish it; no lock is taken.  The
+ * consumer is expected to take elements in batches with
+ * {@link #drainTo(FastArrayList, int)}, which moves every published element
+ * of a segment into the sink's backing array with one
+ * {@code System.arraycopy}, so synchronization is paid per segment instead
+ * of per element.
+ *
+ * <p>Elements become visible to the consumer a segment prefix at a time: a
+ * full segment is always drainable, while the partially filled tail segment
+ * is drained only when no producer is in the middle of writing to it.
+ * Elements still being written are picked up by a later drain.
+ *
+ * <p>Only a single thread may call the consumer methods ({@link #poll},
+ * {@link #drainTo}, {@link #isEmpty} and {@link #size}); any number of
+ * threads may call {@link #offer}.  Null elements are not permitted.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class MpscBatchQueue<E> {
+    /**
+     * Default number of slots per segment.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+    static final class Segment {
+        final Object[] items;
+        volatile int claimed;   // slots handed out, may overshoot items.length
+        volatile int published; // slots written
+        volatile Segment next;
+
+        Segment(int capacity) {
+            items = new Object[capacity];
+        }
+
+        /**
+         * Returns the length of the prefix that is known to be completely
+         * written.  Reading {@code published} before {@code claimed} means
+         * that when the two agree, every claim made so far has been
+         * published, and the volatile read of {@code published} makes all of
+         * those writes visible.
+         */
+        int readable() {
+            int p = published;
+            if (p == items.length || p == claimed)
+                return p;
+            return -1; // a producer is still writing somewhere in this segment
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Segment> CLAIMED =
+            AtomicIntegerFieldUpdater.newUpdater(Segment.class, "claimed");
+    private static final AtomicIntegerFieldUpdater<Segment> PUBLISHED =
+            AtomicIntegerFieldUpdater.newUpdater(Segment.class, "published");
+    private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscBatchQueue, Segment> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(MpscBatchQueue.class, Segment.class, "tail");
+
+    private final int segmentSize;
+
+    /** Segment producers append to; may lag behind the real last segment. */
+    private volatile Segment tail;
+
+    /** Segment the consumer reads from (consumer only). */
+    private Segment head;
+
+    /** Index of the next slot of head to consume (consumer only). */
+    private int consumed;
+
+    /**
+     * Creates an empty queue with the default segment size.
+     */
+    public MpscBatchQueue() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates an empty queue whose segments hold {@code segmentSize}
+     * elements each.
+     *
+     * @param  segmentSize  the number of slots per segment
+     * @throws IllegalArgumentException if {@code segmentSize} is not positive
+     */
+    public MpscBatchQueue(int segmentSize) {
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("Illegal segment size: " +
+                    segmentSize);
+        this.segmentSize = segmentSize;
+        this.head = this.tail = new Segment(segmentSize);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue.  As the
+     * queue is unbounded, this method never returns {@code false}.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        Segment t = tail;
+        for (;;) {
+            int i = CLAIMED.getAndIncrement(t);
+            if (i < t.items.length) {
+                t.items[i] = e;
+                PUBLISHED.incrementAndGet(t);
+                return true;
+            }
+            t = nextSegment(t);
+        }
+    }
+
+    /**
+     * Returns the segment following the full segment {@code t}, linking a
+     * new one if no other producer has done so yet, and helps swing the tail.
+     */
+    private Segment nextSegment(Segment t) {
+        Segment next = t.next;
+        if (next == null) {
+            Segment s = new Segment(segmentSize);
+            next = NEXT.compareAndSet(t, null, s) ? s : t.next;
+        }
+        TAIL.compareAndSet(this, t, next);
+        return next;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, or returns {@code null}
+     * if no element is currently available.
+     *
+     * @return the head of this queue, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        Segment h = head;
+        int i = consumed;
+        if (i == h.items.length) {
+            Segment next = h.next;
+            if (next == null)
+                return null;
+            head = h = next;
+            consumed = i = 0;
+        }
+        if (i >= h.readable())
+            return null;
+        E e = (E) h.items[i];
+        h.items[i] = null;
+        consumed = i + 1;
+        return e;
+    }
+
+    /**
+     * Moves all currently available elements to the end of {@code sink}.
+     *
+     * @param sink the list to transfer elements into
+     * @return the number of elements transferred
+     * @see #drainTo(FastArrayList, int)
+     */
+    public int drainTo(FastArrayList<? super E> sink) {
+        return drainTo(sink, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Moves at most {@code max} currently available elements, in queue
+     * order, to the end of {@code sink}.  Each segment is transferred with
+     * a single array copy into the sink's backing array.
+     *
+     * @param sink the list to transfer elements into
+     * @param max the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws NullPointerException if {@code sink} is null
+     */
+    public int drainTo(FastArrayList<? super E> sink, int max) {
+        Objects.requireNonNull(sink);
+        Segment h = head;
+        int i = consumed;
+        int clearFrom = i;
+        int n = 0;
+        while (n < max) {
+            if (i == h.items.length) {
+                Segment next = h.next;
+                if (next == null)
+                    break;
+                // the old segment is dropped whole, no need to clear it
+                h = next;
+                i = clearFrom = 0;
+            }
+            int count = Math.min(h.readable() - i, max - n);
+            if (count <= 0)
+                break;
+            sink.appendArray(h.items, i, count);
+            i += count;
+            n += count;
+        }
+        // clear to let GC do its work
+        Arrays.fill(h.items, clearFrom, i, null);
+        head = h;
+        consumed = i;
+        return n;
+    }
+
+    /**
+     * Returns {@code true} if no element is currently available to the
+     * consumer.
+     *
+     * @return {@code true} if a {@link #poll} would return {@code null}
+     */
+    public boolean isEmpty() {
+        Segment h = head;
+        int i = consumed;
+        if (i == h.items.length) {
+            if ((h = h.next) == null)
+                return true;
+            i = 0;
+        }
+        return i >= h.readable();
+    }
+
+    /**
+     * Returns the number of elements published but not yet consumed.  The
+     * value is a snapshot and may be stale as soon as it is returned.
+     *
+     * @return the approximate number of elements in this queue
+     */
+    public int size() {
+        long n = -consumed;
+        for (Segment s = head; s != null; s = s.next)
+            n += s.published;
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,317 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * A log of the changes made to a {@link FastArrayList}, kept as compact
+ * deltas so that replicas can be brought up to date at a cost proportional
+ * to the amount of change rather than to the size of the list.
+ *
+ * <p>A journal is obtained from {@link FastArrayList#enableJournal()}.
+ * Each delta inserts, replaces or removes a contiguous range.  Adjacent
+ * changes are coalesced into the most recent delta for as long as it has
+ * not been handed out, so a burst of appends, a loop of {@code set}s over
+ * neighbouring slots or repeated {@code remove(0)} calls each become a
+ * single delta.
+ *
+ * <p>Every delta has a version, starting at 1 for the first delta after the
+ * journal was enabled.  A replica that reflects version {@code v} of the
+ * list is brought up to date with
+ * {@code MutationJournal.apply(journal.deltasSince(v), replica)}, after
+ * which it reflects {@link #version()}.  Deltas that every replica has
+ * seen can be dropped with {@link #discardThrough}.
+ *
+ * <p>Like the list it belongs to, a journal is not synchronized: it must
+ * be read by the thread that modifies the list.  The deltas it hands out
+ * are never modified afterwards and may be passed to other threads, or
+ * serialized if the elements are.
+ *
+ * @param <E> the type of elements in the journaled list
+ */
+public final class MutationJournal<E> {
+
+    /**
+     * The kind of change a {@link Delta} describes.
+     */
+    public enum Kind {
+        /** Elements were inserted at {@link Delta#index()}. */
+        INSERT,
+        /** Elements starting at {@link Delta#index()} were replaced. */
+        SET,
+        /** Elements starting at {@link Delta#index()} were removed. */
+        REMOVE
+    }
+
+    /**
+     * One change to a contiguous range of the list.
+     *
+     * @param <E> the type of elements in the journaled list
+     */
+    public static final class Delta<E> implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Kind kind;
+        final long version;
+        int index;
+        int count;
+        Object[] values; // INSERT and SET only; may be longer than count
+
+        Delta(Kind kind, long version, int index, int count, Object[] values) {
+            this.kind = kind;
+            this.version = version;
+            this.index = index;
+            this.count = count;
+            this.values = values;
+        }
+
+        /**
+         * Returns the kind of this change.
+         *
+         * @return the kind of this change
+         */
+        public Kind kind() {
+            return kind;
+        }
+
+        /**
+         * Returns the version of the list after this change.
+         *
+         * @return the version of this delta
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Returns the position of the first affected element.
+         *
+         * @return the position of the first affected element
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Returns the number of affected elements.
+         *
+         * @return the number of affected elements
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * Returns the {@code i}th new element of an {@link Kind#INSERT} or
+         * {@link Kind#SET} delta.
+         *
+         * @param i index among the affected elements
+         * @return the new element
+         */
+        @SuppressWarnings("unchecked")
+        public E value(int i) {
+            return (E) values[i];
+        }
+
+        /**
+         * Applies this change to {@code replica}, which must reflect the
+         * version preceding this delta.
+         *
+         * @param replica the list to update
+         */
+        public void applyTo(FastArrayList<? super E> replica) {
+            switch (kind) {
+                case INSERT:
+                    replica.insertArray(index, values, 0, count);
+                    break;
+                case SET:
+                    for (int i = 0; i < count; i++)
+                        replica.set(index + i, value(i));
+                    break;
+                case REMOVE:
+                    replica.removeRange(index, index + count);
+                    break;
+            }
+        }
+
+        private void writeObject(java.io.ObjectOutputStream s)
+                throws java.io.IOException {
+            // don't ship the spare capacity of coalesced deltas
+            if (values != null && values.length != count)
+                values = Arrays.copyOf(values, count);
+            s.defaultWriteObject();
+        }
+
+        public String toString() {
+            return kind + "@" + version + "[" + index + ", +" + count + "]";
+        }
+    }
+
+    private final FastArrayList<Delta<E>> deltas = new FastArrayList<>();
+
+    /** Version of the list before the first retained delta. */
+    private long baseVersion;
+
+    /**
+     * Whether the last delta has been handed out and must not be extended
+     * any more.
+     */
+    private boolean sealed = true;
+
+    /** The listener the journaled list reports its changes to. */
+    final MutationListener listener = new Listener();
+
+    MutationJournal() {
+    }
+
+    /**
+     * Returns the current version of the journaled list, which is the
+     * version of the most recent delta, or 0 if nothing has changed.
+     *
+     * @return the current version
+     */
+    public long version() {
+        return baseVersion + deltas.size();
+    }
+
+    /**
+     * Returns the number of deltas held by this journal.
+     *
+     * @return the number of retained deltas
+     */
+    public int size() {
+        return deltas.size();
+    }
+
+    /**
+     * Returns the deltas that take a replica from version {@code version}
+     * to the current version, oldest first.
+     *
+     * @param version the version the replica reflects
+     * @return the deltas recorded after {@code version}
+     * @throws IllegalArgumentException if {@code version} is in the future,
+     *         or older than the deltas retained by this journal
+     */
+    public List<Delta<E>> deltasSince(long version) {
+        if (version < baseVersion || version > version())
+            throw new IllegalArgumentException("Version " + version +
+                    " not in [" + baseVersion + ", " + version() + "]");
+        sealed = true;
+        int from = (int) (version - baseVersion);
+        return new FastArrayList<>(deltas.subList(from, deltas.size()));
+    }
+
+    /**
+     * Drops the deltas up to and including {@code version}, once every
+     * replica has applied them.
+     *
+     * @param version the version every replica has reached
+     */
+    public void discardThrough(long version) {
+        int n = (int) Math.min(Math.max(version - baseVersion, 0), deltas.size());
+        if (n == 0)
+            return;
+        if (n == deltas.size())
+            sealed = true;
+        deltas.removeRange(0, n);
+        baseVersion += n;
+    }
+
+    /**
+     * Applies {@code deltas}, in order, to {@code replica}.
+     *
+     * @param deltas deltas obtained from {@link #deltasSince}
+     * @param replica the list to update
+     * @param <E> the type of elements in the journaled list
+     */
+    public static <E> void apply(List<? extends Delta<? extends E>> deltas,
+                                 FastArrayList<E> replica) {
+        for (Delta<? extends E> d : deltas)
+            d.applyTo(replica);
+    }
+
+    /**
+     * Returns the last delta if it may still be extended, otherwise null.
+     */
+    private Delta<E> open() {
+        int n = deltas.size();
+        return (sealed || n == 0) ? null : deltas.get(n - 1);
+    }
+
+    private void append(Kind kind, int index, int count, Object[] values) {
+        deltas.add(new Delta<E>(kind, version() + 1, index, count, values));
+        sealed = false;
+    }
+
+    private static Object[] spliceIn(Object[] values, int count, int at,
+                                     Object[] a, int from, int n) {
+        if (count + n > values.length)
+            values = Arrays.copyOf(values, Math.max(count + n, count + (count >> 1)));
+        System.arraycopy(values, at, values, at + n, count - at);
+        System.arraycopy(a, from, values, at, n);
+        return values;
+    }
+
+    /** Records the changes the list reports. */
+    private final class Listener implements MutationListener {
+        public Object owner() {
+            return MutationJournal.this;
+        }
+
+        public void inserted(Object[] a, int index, int count, int size) {
+            Delta<E> d = open();
+            if (d != null && d.kind == Kind.INSERT
+                    && index >= d.index && index <= d.index + d.count) {
+                d.values = spliceIn(d.values, d.count, index - d.index, a, index, count);
+                d.count += count;
+                return;
+            }
+            append(Kind.INSERT, index, count, Arrays.copyOfRange(a, index, index + count));
+        }
+
+        public void removing(Object[] a, int from, int to, int size) {
+            int n = to - from;
+            Delta<E> d = open();
+            if (d != null) {
+                if (d.kind == Kind.REMOVE && (from == d.index || to == d.index)) {
+                    d.index = from;
+                    d.count += n;
+                    return;
+                }
+                if (d.kind == Kind.INSERT
+                        && from >= d.index && to <= d.index + d.count) {
+                    // take back elements that were inserted by the same delta
+                    int at = from - d.index;
+                    System.arraycopy(d.values, at + n, d.values, at, d.count - at - n);
+                    Arrays.fill(d.values, d.count - n, d.count, null);
+                    d.count -= n;
+                    if (d.count == 0) {
+                        deltas.remove(deltas.size() - 1);
+                        sealed = true;
+                    }
+                    return;
+                }
+            }
+            append(Kind.REMOVE, from, n, null);
+        }
+
+        public void set(int index, Object oldValue, Object newValue) {
+            Delta<E> d = open();
+            if (d != null && d.kind != Kind.REMOVE
+                    && index >= d.index && index < d.index + d.count) {
+                d.values[index - d.index] = newValue;
+                return;
+            }
+            if (d != null && d.kind == Kind.SET && index == d.index + d.count) {
+                d.values = spliceIn(d.values, d.count, d.count,
+                        new Object[] { newValue }, 0, 1);
+                d.count++;
+                return;
+            }
+            append(Kind.SET, index, 1, new Object[] { newValue });
+        }
+
+        public void replaced(Object[] a, int from, int to, int size) {
+            append(Kind.SET, from, to - from, Arrays.copyOfRange(a, from, to));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.force;
+
+/**
+ * Receives the changes made to a {@link FastArrayList}.  Used by the opt-in
+ * features that have to follow the contents of a list as it changes.
+ *
+ * <p>Callbacks receive the list's backing array so that listeners can read
+ * the affected elements without copying; they must not modify it.  Every
+ * change is reported as a sequence of these callbacks which, replayed in
+ * order against a copy of the list, reproduces the change.
+ *
+ * <p>The public features that follow a list implement this interface in a
+ * private nested class, so that the callbacks do not become part of their
+ * API, and name themselves as its {@link #owner()}.
+ */
+interface MutationListener {
+
+    /**
+     * Called after {@code count} elements were inserted at {@code index};
+     * they are {@code a[index]} to {@code a[index + count - 1]}.
+     *
+     * @param a the backing array
+     * @param index the position of the first inserted element
+     * @param count the number of inserted elements
+     * @param size the size of the list after the insertion
+     */
+    void inserted(Object[] a, int index, int count, int size);
+
+    /**
+     * Called before the elements from {@code from}, inclusive, to
+     * {@code to}, exclusive, are removed.
+     *
+     * @param a the backing array
+     * @param from the position of the first element to be removed
+     * @param to one past the position of the last element to be removed
+     * @param size the size of the list before the removal
+     */
+    void removing(Object[] a, int from, int to, int size);
+
+    /**
+     * Called after the element at {@code index} was replaced.
+     *
+     * @param index the position of the replaced element
+     * @param oldValue the element previously at that position
+     * @param newValue the element now at that position
+     */
+    void set(int index, Object oldValue, Object newValue);
+
+    /**
+     * Called after the elements from {@code from}, inclusive, to
+     * {@code to}, exclusive, were rewritten in place by a bulk operation
+     * such as a sort.
+     *
+     * @param a the backing array
+     * @param from the position of the first rewritten element
+     * @param to one past the position of the last rewritten element
+     * @param size the size of the list
+     */
+    void replaced(Object[] a, int from, int to, int size);
+
+    /**
+     * Called when a bulk operation of the list is about to report its
+     * changes, which follow as the usual callbacks.  Lets a listener that
+     * cares about the calls made rather than their effect, such as a trace,
+     * tell them apart.  Called once for each {@code removeIf} (and so for
+     * the {@code removeAll} and {@code retainAll} that use it),
+     * {@code sort}, {@code replaceAll} and range removal, of the list or
+     * of a sublist, even if the call changes nothing.
+     *
+     * @param op the operation: {@code REMOVE_IF}, {@code SORT},
+     *        {@code REPLACE_ALL} or {@code REMOVE_RANGE}
+     * @param from the position of the first element the call covers
+     * @param count the number of elements the call covers
+     * @param sizeBefore the size of the list before the call
+     * @param sizeAfter the size of the list after the call
+     */
+    default void bulkCall(OpTrace.Op op, int from, int count, int sizeBefore, int sizeAfter) {
+    }
+
+    /**
+     * Returns the feature this listener keeps up to date, by which the list
+     * finds it and takes it out again.
+     *
+     * @return the feature this listener belongs to
+     */
+    default Object owner() {
+        return this;
+    }
+}
@@ -0,0 +1,112 @@
+package com.force;
+
+/**
+ * Forwards the changes made to a {@link FastArrayList} to two listeners, so
+ * that several opt-in features can follow the same list.  Chains of any
+ * length are built from pairs with {@link #add} and taken apart with
+ * {@link #remove}, leaving the list with a single listener field and no
+ * cost when only one feature is in use.
+ */
+final class MutationMulticaster implements MutationListener {
+    private final MutationListener a, b;
+
+    private MutationMulticaster(MutationListener a, MutationListener b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * Returns a listener that notifies {@code l} and then {@code added}.
+     *
+     * @param l the current listener, or null
+     * @param added the listener to add
+     * @return the combined listener
+     */
+    static MutationListener add(MutationListener l, MutationListener added) {
+        if (l == null)
+            return added;
+        return new MutationMulticaster(l, added);
+    }
+
+    /**
+     * Returns {@code l} without {@code removed}.
+     *
+     * @param l the current listener, or null
+     * @param removed the listener to remove
+     * @return the remaining listener, or null if there is none
+     */
+    static MutationListener remove(MutationListener l, MutationListener removed) {
+        if (l == removed || l == null)
+            return null;
+        if (!(l instanceof MutationMulticaster))
+            return l;
+        MutationMulticaster m = (MutationMulticaster) l;
+        MutationListener a = remove(m.a, removed);
+        MutationListener b = remove(m.b, removed);
+        if (a == m.a && b == m.b)
+            return l;
+        return (a == null) ? b : (b == null) ? a : new MutationMulticaster(a, b);
+    }
+
+    /**
+     * Returns {@code l} without the first listener whose {@linkplain
+     * MutationListener#owner() owner} is of the given type.
+     *
+     * @param l the current listener, or null
+     * @param type the type of feature whose listener to remove
+     * @return the remaining listener, or null if there is none
+     */
+    static MutationListener remove(MutationListener l, Class<?> type) {
+        MutationListener removed = listenerOf(l, type);
+        return (removed == null) ? l : remove(l, removed);
+    }
+
+    /**
+     * Returns the owner of the first listener in {@code l} whose
+     * {@linkplain MutationListener#owner() owner} is of the given type, or
+     * null.
+     *
+     * @param l the current listener, or null
+     * @param type the type of feature to look for
+     * @param <T> the type of feature to look for
+     * @return the feature found, or null
+     */
+    static <T> T find(MutationListener l, Class<T> type) {
+        MutationListener found = listenerOf(l, type);
+        return (found == null) ? null : type.cast(found.owner());
+    }
+
+    private static MutationListener listenerOf(MutationListener l, Class<?> type) {
+        if (l instanceof MutationMulticaster) {
+            MutationMulticaster m = (MutationMulticaster) l;
+            MutationListener found = listenerOf(m.a, type);
+            return (found != null) ? found : listenerOf(m.b, type);
+        }
+        return (l != null && type.isInstance(l.owner())) ? l : null;
+    }
+
+    public void inserted(Object[] a, int index, int count, int size) {
+        this.a.inserted(a, index, count, size);
+        this.b.inserted(a, index, count, size);
+    }
+
+    public void removing(Object[] a, int from, int to, int size) {
+        this.a.removing(a, from, to, size);
+        this.b.removing(a, from, to, size);
+    }
+
+    public void set(int index, Object oldValue, Object newValue) {
+        a.set(index, oldValue, newValue);
+        b.set(index, oldValue, newValue);
+    }
+
+    public void replaced(Object[] a, int from, int to, int size) {
+        this.a.replaced(a, from, to, size);
+        this.b.replaced(a, from, to, size);
+    }
+
+    public void bulkCall(OpTrace.Op op, int from, int count, int sizeBefore, int sizeAfter) {
+        a.bulkCall(op, from, count, sizeBefore, sizeAfter);
+        b.bulkCall(op, from, count, sizeBefore, sizeAfter);
+    }
+}
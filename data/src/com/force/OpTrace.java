@@ -0,0 +1,272 @@
+package com.force;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A compact record of the changes made to a {@link FastArrayList}, for
+ * replaying the real access mix of a list against other implementations
+ * or tunings.  Obtained from {@link FastArrayList#recordTrace(int)}.
+ *
+ * <p>Each change is one record of five {@code int}s: the {@linkplain Op
+ * operation}, the position it applies to, the number of elements involved,
+ * the size of the list before the change and the number of elements the
+ * call covered.  Element values are not kept.  A trace is written with
+ * {@link #writeTo} and read back with {@link #readFrom}; the binary form
+ * is 17 bytes per record.
+ *
+ * <p>Bulk operations, on the list or on a sublist, are recorded as the
+ * calls they were, so that a replay makes the same calls:
+ * {@code removeIf}, {@code removeAll} and {@code retainAll} as
+ * {@link Op#REMOVE_IF}, {@code sort} as {@link Op#SORT},
+ * {@code replaceAll} as {@link Op#REPLACE_ALL} and
+ * {@code subList(from, to).clear()} as {@link Op#REMOVE_RANGE}.  Other
+ * changes are recorded as the list reports them to its listeners.  Reads
+ * are not recorded.
+ */
+public final class OpTrace {
+
+    /** The kind of change a record describes. */
+    public enum Op {
+        /** Elements were inserted at the recorded position. */
+        INSERT,
+        /** Elements starting at the recorded position were removed. */
+        REMOVE,
+        /** The element at the recorded position was replaced. */
+        SET,
+        /** Elements starting at the recorded position were rewritten in
+         *  place, as by {@code sortByIntKey}. */
+        REWRITE,
+        /** {@code removeIf} removed the recorded number of elements from
+         *  the {@linkplain #span span} starting at the recorded position. */
+        REMOVE_IF,
+        /** The elements starting at the recorded position were sorted. */
+        SORT,
+        /** {@code replaceAll} rewrote the elements starting at the
+         *  recorded position. */
+        REPLACE_ALL,
+        /** A range starting at the recorded position was removed, as by
+         *  {@code subList(from, to).clear()}. */
+        REMOVE_RANGE;
+
+        private static final Op[] VALUES = values();
+    }
+
+    private static final int MAGIC = 0x46545232; // "FTR2"
+    private static final int RECORD_INTS = 5;
+
+    private final int initialSize;
+    private final int maxRecords;
+    private int[] records = new int[RECORD_INTS * 16];
+    private int count;
+    private long dropped;
+    private int listSize; // size of the traced list, for SET records
+    private int pending;  // elements of a recorded call still to report
+
+    /** The listener the traced list reports its changes to. */
+    final MutationListener listener = new Listener();
+
+    /**
+     * Creates a trace of a list that holds {@code initialSize} elements,
+     * keeping at most {@code maxRecords} records.
+     */
+    OpTrace(int initialSize, int maxRecords) {
+        if (maxRecords < 0)
+            throw new IllegalArgumentException("Illegal max records: " + maxRecords);
+        this.initialSize = initialSize;
+        this.maxRecords = maxRecords;
+        this.listSize = initialSize;
+    }
+
+    /**
+     * Returns the size of the list when recording started.
+     *
+     * @return the size of the traced list before the first record
+     */
+    public int initialSize() {
+        return initialSize;
+    }
+
+    /**
+     * Returns the number of records in this trace.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of changes that were not recorded because the
+     * trace was full.
+     *
+     * @return the number of dropped records
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the operation of the {@code i}th record.
+     *
+     * @param i index of the record
+     * @return the operation of the record
+     */
+    public Op op(int i) {
+        return Op.VALUES[records[i * RECORD_INTS]];
+    }
+
+    /**
+     * Returns the position the {@code i}th record applies to.
+     *
+     * @param i index of the record
+     * @return the position of the first affected element
+     */
+    public int index(int i) {
+        return records[i * RECORD_INTS + 1];
+    }
+
+    /**
+     * Returns the number of elements involved in the {@code i}th record.
+     *
+     * @param i index of the record
+     * @return the number of affected elements
+     */
+    public int count(int i) {
+        return records[i * RECORD_INTS + 2];
+    }
+
+    /**
+     * Returns the size of the list before the {@code i}th record.
+     *
+     * @param i index of the record
+     * @return the size of the list before the change
+     */
+    public int listSize(int i) {
+        return records[i * RECORD_INTS + 3];
+    }
+
+    /**
+     * Returns the number of elements the call of the {@code i}th record
+     * covered: the range a {@link Op#REMOVE_IF} went over, and
+     * {@link #count} for every other operation.
+     *
+     * @param i index of the record
+     * @return the number of elements the call covered
+     */
+    public int span(int i) {
+        return records[i * RECORD_INTS + 4];
+    }
+
+    private void record(Op op, int index, int n, int size) {
+        record(op, index, n, size, n);
+    }
+
+    private void record(Op op, int index, int n, int size, int span) {
+        if (count == maxRecords) {
+            dropped++;
+            return;
+        }
+        int at = count * RECORD_INTS;
+        if (at == records.length)
+            records = Arrays.copyOf(records, (count + (count >> 1)) * RECORD_INTS);
+        records[at] = op.ordinal();
+        records[at + 1] = index;
+        records[at + 2] = n;
+        records[at + 3] = size;
+        records[at + 4] = span;
+        count++;
+    }
+
+    /** Records the changes the list reports. */
+    private final class Listener implements MutationListener {
+        public Object owner() {
+            return OpTrace.this;
+        }
+
+        public void inserted(Object[] a, int index, int count, int size) {
+            record(Op.INSERT, index, count, size - count);
+            listSize = size;
+        }
+
+        public void removing(Object[] a, int from, int to, int size) {
+            // the changes of a recorded call are not recorded again
+            if (pending > 0)
+                pending -= to - from;
+            else
+                record(Op.REMOVE, from, to - from, size);
+            listSize = size - (to - from);
+        }
+
+        public void set(int index, Object oldValue, Object newValue) {
+            record(Op.SET, index, 1, listSize);
+        }
+
+        public void replaced(Object[] a, int from, int to, int size) {
+            if (pending > 0)
+                pending -= to - from;
+            else
+                record(Op.REWRITE, from, to - from, size);
+            listSize = size;
+        }
+
+        public void bulkCall(Op op, int from, int count, int sizeBefore, int sizeAfter) {
+            if (op == Op.REMOVE_IF) {
+                pending = sizeBefore - sizeAfter;
+                record(op, from, pending, sizeBefore, count);
+            } else {
+                pending = count;
+                record(op, from, count, sizeBefore);
+            }
+        }
+    }
+
+    /**
+     * Writes this trace to {@code out} in binary form.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(initialSize);
+        data.writeInt(count);
+        for (int i = 0, n = count * RECORD_INTS; i < n; i += RECORD_INTS) {
+            data.writeByte(records[i]);
+            data.writeInt(records[i + 1]);
+            data.writeInt(records[i + 2]);
+            data.writeInt(records[i + 3]);
+            data.writeInt(records[i + 4]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a trace written by {@link #writeTo}.
+     *
+     * @param in the stream to read from
+     * @return the trace read
+     * @throws IOException if an I/O error occurs or the stream does not
+     *         hold a trace
+     */
+    public static OpTrace readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not an operation trace");
+        int initialSize = data.readInt();
+        int n = data.readInt();
+        if (n < 0)
+            throw new IOException("Corrupt operation trace");
+        OpTrace trace = new OpTrace(initialSize, n);
+        trace.records = new int[Math.min(Math.max(n, 16), 1 << 16) * RECORD_INTS];
+        for (int i = 0; i < n; i++) {
+            int op = data.readUnsignedByte();
+            if (op >= Op.VALUES.length)
+                throw new IOException("Corrupt operation trace");
+            trace.record(Op.VALUES[op], data.readInt(), data.readInt(), data.readInt(),
+                    data.readInt());
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,231 @@
+package com.force;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * An index over a numeric key of the elements of a {@link FastArrayList}
+ * that answers range sums, minimums and maximums in O(log n) time instead
+ * of scanning the range.  Obtained from
+ * {@link FastArrayList#enableRangeIndex}.
+ *
+ * <p>The index is a segment tree of the sums, minimums and maximums of
+ * power-of-two aligned ranges of keys.  It follows the list: {@code set}
+ * and short runs of appends and removals at the end of the list update it
+ * in O(log n) per element.  Other changes, such as insertions in the
+ * middle, large {@code addAll}s or sorts, mark it stale, and the next query
+ * rebuilds it from the list in O(n) time, as does {@link #rebuild()}.
+ *
+ * <p>The index takes three {@code long}s for each of up to twice as many
+ * slots as the list has elements.  Like the list it belongs to, it is not
+ * synchronized, and must be used by the thread that modifies the list.
+ * Sums wrap around on overflow.
+ *
+ * @param <E> the type of elements in the indexed list
+ */
+public final class RangeIndex<E> {
+
+    private final FastArrayList<E> list;
+    private final ToLongFunction<? super E> key;
+
+    /** Number of leaves; a power of two.  Leaf i is node leaves + i. */
+    private int leaves;
+    /** Number of leaves holding keys of the list. */
+    private int used;
+    private long[] sum, min, max;
+    private boolean stale = true;
+
+    /** The listener the indexed list reports its changes to. */
+    final MutationListener listener = new Listener();
+
+    RangeIndex(FastArrayList<E> list, ToLongFunction<? super E> key) {
+        this.list = list;
+        this.key = key;
+    }
+
+    /**
+     * Returns the key of {@code e}.
+     */
+    @SuppressWarnings("unchecked")
+    private long keyOf(Object e) {
+        return key.applyAsLong((E) e);
+    }
+
+    /**
+     * Rebuilds this index from the current contents of the list.  Queries
+     * do this by themselves when the index is stale, so calling it is only
+     * needed to take the cost at a chosen time.
+     */
+    public void rebuild() {
+        final Object[] a = list.elementData;
+        final int n = list.size();
+        int cap = (n <= 1) ? 1 : Integer.highestOneBit(n - 1) << 1;
+        if (sum == null || sum.length != 2 * cap) {
+            leaves = cap;
+            sum = new long[2 * cap];
+            min = new long[2 * cap];
+            max = new long[2 * cap];
+        }
+        for (int i = 0; i < n; i++) {
+            long k = keyOf(a[i]);
+            sum[cap + i] = k;
+            min[cap + i] = k;
+            max[cap + i] = k;
+        }
+        Arrays.fill(sum, cap + n, 2 * cap, 0L);
+        Arrays.fill(min, cap + n, 2 * cap, Long.MAX_VALUE);
+        Arrays.fill(max, cap + n, 2 * cap, Long.MIN_VALUE);
+        for (int i = cap - 1; i > 0; i--)
+            pull(i);
+        used = n;
+        stale = false;
+    }
+
+    private void pull(int i) {
+        int l = 2 * i, r = l + 1;
+        sum[i] = sum[l] + sum[r];
+        min[i] = Math.min(min[l], min[r]);
+        max[i] = Math.max(max[l], max[r]);
+    }
+
+    /**
+     * Stores a key, or the identities if {@code present} is false, in leaf
+     * {@code index} and updates its ancestors.
+     */
+    private void update(int index, long k, boolean present) {
+        int i = leaves + index;
+        sum[i] = present ? k : 0L;
+        min[i] = present ? k : Long.MAX_VALUE;
+        max[i] = present ? k : Long.MIN_VALUE;
+        for (i >>= 1; i > 0; i >>= 1)
+            pull(i);
+    }
+
+    /**
+     * Returns whether updating {@code count} leaves one by one is cheaper
+     * than rebuilding the tree.
+     */
+    private boolean worthUpdating(int count) {
+        int depth = 32 - Integer.numberOfLeadingZeros(leaves);
+        return (long) count * depth <= used;
+    }
+
+    private void checkRange(int from, int to) {
+        int size = list.size();
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to +
+                    ", Size: " + size);
+        if (stale)
+            rebuild();
+    }
+
+    /**
+     * Returns the sum of the keys of the elements from {@code from},
+     * inclusive, to {@code to}, exclusive.
+     *
+     * @param from position of the first element of the range
+     * @param to one past the position of the last element of the range
+     * @return the sum of the keys in the range, 0 if it is empty
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public long rangeSum(int from, int to) {
+        checkRange(from, to);
+        long s = 0;
+        for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0)
+                s += sum[l++];
+            if ((r & 1) != 0)
+                s += sum[--r];
+        }
+        return s;
+    }
+
+    /**
+     * Returns the smallest key of the elements from {@code from},
+     * inclusive, to {@code to}, exclusive.
+     *
+     * @param from position of the first element of the range
+     * @param to one past the position of the last element of the range
+     * @return the smallest key in the range
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     * @throws NoSuchElementException if the range is empty
+     */
+    public long rangeMin(int from, int to) {
+        checkRange(from, to);
+        if (from == to)
+            throw new NoSuchElementException();
+        long m = Long.MAX_VALUE;
+        for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0)
+                m = Math.min(m, min[l++]);
+            if ((r & 1) != 0)
+                m = Math.min(m, min[--r]);
+        }
+        return m;
+    }
+
+    /**
+     * Returns the largest key of the elements from {@code from},
+     * inclusive, to {@code to}, exclusive.
+     *
+     * @param from position of the first element of the range
+     * @param to one past the position of the last element of the range
+     * @return the largest key in the range
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     * @throws NoSuchElementException if the range is empty
+     */
+    public long rangeMax(int from, int to) {
+        checkRange(from, to);
+        if (from == to)
+            throw new NoSuchElementException();
+        long m = Long.MIN_VALUE;
+        for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0)
+                m = Math.max(m, max[l++]);
+            if ((r & 1) != 0)
+                m = Math.max(m, max[--r]);
+        }
+        return m;
+    }
+
+    /** Follows the changes the list reports. */
+    private final class Listener implements MutationListener {
+        public Object owner() {
+            return RangeIndex.this;
+        }
+
+        public void inserted(Object[] a, int index, int count, int size) {
+            if (stale)
+                return;
+            if (index != used || size > leaves || !worthUpdating(count)) {
+                stale = true;
+                return;
+            }
+            for (int i = index; i < size; i++)
+                update(i, keyOf(a[i]), true);
+            used = size;
+        }
+
+        public void removing(Object[] a, int from, int to, int size) {
+            if (stale)
+                return;
+            if (to != used || !worthUpdating(to - from)) {
+                stale = true;
+                return;
+            }
+            for (int i = from; i < to; i++)
+                update(i, 0L, false);
+            used = from;
+        }
+
+        public void set(int index, Object oldValue, Object newValue) {
+            if (!stale)
+                update(index, keyOf(newValue), true);
+        }
+
+        public void replaced(Object[] a, int from, int to, int size) {
+            stale = true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.force;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the bytes of one record into an element, for the loaders of
+ * {@link MappedLoader}.
+ *
+ * @param <T> the type of the parsed elements
+ */
+@FunctionalInterface
+public interface RecordParser<T> {
+
+    /**
+     * Parses the record in bytes {@code [offset, offset + length)} of
+     * {@code buffer}.  The offset is an absolute position in the buffer,
+     * which covers more than the record; the parser may move the position
+     * and limit of the buffer, which the loader does not use.  A line
+     * record excludes its line terminator.
+     *
+     * @param buffer the bytes holding the record
+     * @param offset the position of the first byte of the record
+     * @param length the number of bytes in the record
+     * @return the element parsed from the record, or null to skip it
+     */
+    T parse(ByteBuffer buffer, int offset, int length);
+}
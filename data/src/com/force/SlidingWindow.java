@@ -0,0 +1,266 @@
+package com.force;
+
+import java.util.*;
+
+/**
+ * A bounded window over the most recent elements, which keeps their
+ * minimum and maximum according to a comparator up to date as elements
+ * enter and leave.  {@link LongSlidingWindow} and
+ * {@link DoubleSlidingWindow} are the primitive specializations, which
+ * also keep running sums.
+ *
+ * <p>The elements are kept in a ring buffer: adding an element to a full
+ * window evicts the oldest in constant time, with no shifting.  The
+ * minimum and maximum come from two monotonic deques of the elements that
+ * can still become the extreme of the window, which makes every operation
+ * amortized constant time.
+ *
+ * <p>A window created with {@link #SlidingWindow(int, long, Comparator)}
+ * also evicts elements by age: every element is added with a timestamp, and
+ * elements at least {@code maxAge} older than the latest timestamp are
+ * evicted.  Timestamps are in any unit the caller likes but must not
+ * decrease.
+ *
+ * <p>The list view holds the elements oldest first.  {@link #get} does
+ * not range check its index, in the same way as
+ * {@link FastArrayList#get}.  Elements can only be added at the end
+ * and evicted from the front.
+ *
+ * @param <E> the type of elements held in this window
+ */
+public class SlidingWindow<E> extends AbstractList<E> implements RandomAccess {
+
+    private final Object[] values;
+    private final Comparator<Object> comparator;
+    private final long[] times;  // null unless evicting by age
+    private final long maxAge;
+
+    /** Position of the oldest element in values. */
+    private int start;
+    private int size;
+
+    /**
+     * Positions of the elements that are smaller (minQ) or larger (maxQ)
+     * than every later element, oldest first; each deque is a ring over
+     * the same capacity as values.
+     */
+    private final int[] minQ, maxQ;
+    private int minHead, minSize, maxHead, maxSize;
+
+    /**
+     * Constructs an empty window holding at most {@code capacity} elements.
+     *
+     * @param capacity the maximum number of elements
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SlidingWindow(int capacity, Comparator<? super E> c) {
+        this(capacity, 0, false, c);
+    }
+
+    /**
+     * Constructs an empty window holding at most {@code capacity} elements,
+     * none of them {@code maxAge} or more older than the latest.
+     *
+     * @param capacity the maximum number of elements
+     * @param maxAge the age at which elements are evicted
+     * @param c the comparator to order the elements by; {@code null} means
+     *          the elements' natural ordering
+     * @throws IllegalArgumentException if the capacity or maximum age is
+     *         not positive
+     */
+    public SlidingWindow(int capacity, long maxAge, Comparator<? super E> c) {
+        this(capacity, maxAge, true, c);
+    }
+
+    @SuppressWarnings("unchecked")
+    private SlidingWindow(int capacity, long maxAge, boolean timed,
+                          Comparator<? super E> c) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                    capacity);
+        if (timed && maxAge <= 0)
+            throw new IllegalArgumentException("Illegal max age: " + maxAge);
+        this.values = new Object[capacity];
+        this.comparator = (c != null) ? (Comparator<Object>) c
+                : (Comparator<Object>) (Comparator<?>) Comparator.naturalOrder();
+        this.times = timed ? new long[capacity] : null;
+        this.maxAge = maxAge;
+        this.minQ = new int[capacity];
+        this.maxQ = new int[capacity];
+    }
+
+    private int wrap(int i) {
+        return (i >= values.length) ? i - values.length : i;
+    }
+
+    /**
+     * Returns the maximum number of elements in this window.
+     *
+     * @return the capacity of this window
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Returns the number of elements in this window.
+     *
+     * @return the number of elements in this window
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the element at the specified position, 0 being the oldest.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) values[wrap(start + index)];
+    }
+
+    /**
+     * Adds an element to a window that evicts by count only, evicting the
+     * oldest element if the window is full.
+     *
+     * @param value the element to add
+     * @return <tt>true</tt>
+     * @throws IllegalStateException if this window evicts by age
+     */
+    public boolean add(E value) {
+        if (times != null)
+            throw new IllegalStateException("Elements need a timestamp");
+        append(value);
+        return true;
+    }
+
+    /**
+     * Adds an element taken at {@code time}, first evicting the elements
+     * that are {@code maxAge} or more older, and the oldest element if the
+     * window is still full.  A window that evicts by count only ignores the time.
+     *
+     * @param value the element to add
+     * @param time the timestamp of the element
+     * @throws IllegalArgumentException if {@code time} is before the
+     *         timestamp of the latest element
+     */
+    public void add(E value, long time) {
+        if (times != null) {
+            if (size != 0 && time - times[wrap(start + size - 1)] < 0)
+                throw new IllegalArgumentException("Time went backwards: " + time);
+            evictExpired(time);
+            times[append(value)] = time;
+        } else {
+            append(value);
+        }
+    }
+
+    /**
+     * Adds an element, evicting the oldest if the window is full, and
+     * returns its position.
+     */
+    private int append(E value) {
+        if (size == values.length)
+            evict();
+        modCount++;
+        int pos = wrap(start + size);
+        values[pos] = value;
+        size++;
+        while (minSize > 0 && comparator.compare(
+                values[minQ[wrap(minHead + minSize - 1)]], value) >= 0)
+            minSize--;
+        minQ[wrap(minHead + minSize++)] = pos;
+        while (maxSize > 0 && comparator.compare(
+                values[maxQ[wrap(maxHead + maxSize - 1)]], value) <= 0)
+            maxSize--;
+        maxQ[wrap(maxHead + maxSize++)] = pos;
+        return pos;
+    }
+
+    /**
+     * Removes and returns the oldest element.
+     *
+     * @return the evicted element
+     * @throws NoSuchElementException if this window is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E evict() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        modCount++;
+        int pos = start;
+        E value = (E) values[pos];
+        values[pos] = null; // clear to let GC do its work
+        if (minQ[minHead] == pos) {
+            minHead = wrap(minHead + 1);
+            minSize--;
+        }
+        if (maxQ[maxHead] == pos) {
+            maxHead = wrap(maxHead + 1);
+            maxSize--;
+        }
+        start = wrap(pos + 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Evicts the elements that are {@code maxAge} or more older than
+     * {@code now}.  Does nothing in a window that evicts by count only.
+     *
+     * @param now the current time
+     * @return the number of elements evicted
+     */
+    public int evictExpired(long now) {
+        if (times == null)
+            return 0;
+        int n = 0;
+        while (size != 0 && now - times[start] >= maxAge) {
+            evict();
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the smallest element in this window.
+     *
+     * @return the smallest element
+     * @throws NoSuchElementException if this window is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E min() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return (E) values[minQ[minHead]];
+    }
+
+    /**
+     * Returns the largest element in this window.
+     *
+     * @return the largest element
+     * @throws NoSuchElementException if this window is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E max() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return (E) values[maxQ[maxHead]];
+    }
+
+    /**
+     * Removes all of the elements from this window.
+     */
+    public void clear() {
+        modCount++;
+        // clear to let GC do its work
+        Arrays.fill(values, null);
+        start = size = 0;
+        minHead = minSize = maxHead = maxSize = 0;
+    }
+}
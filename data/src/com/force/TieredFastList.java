@@ -0,0 +1,498 @@
+package com.force;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * An append-mostly list that stays within a heap budget by moving its
+ * least recently used segments out of the heap.
+ *
+ * <p>Elements are kept in fixed-size {@code Object[]} segments, like the
+ * backing array of a {@link FastArrayList} cut into chunks.  The heap
+ * footprint of the resident segments is estimated with a caller-supplied
+ * sizer.  When it exceeds the heap budget, the least recently used segments
+ * are serialized and dropped from the heap: into direct buffers while the
+ * off-heap budget allows, and into a spill file after that.  A {@link #get}
+ * or {@link #set} on a spilled segment faults it back in, possibly evicting
+ * others.  The segment currently being appended to is never evicted.
+ *
+ * <p>A segment that is faulted in and not modified keeps its serialized
+ * copy, so evicting it again costs nothing.  Space in the spill file is
+ * only reclaimed by {@link #clear}.  Elements must be {@link Serializable}
+ * once the list spills.
+ *
+ * <p>The list supports {@link #add(Object)}, {@link #get} and {@link #set};
+ * insertion and removal at arbitrary positions are not supported.  Like
+ * {@code FastArrayList}, {@code get} and {@code set} do not range check
+ * their index.  Per-tier counters ({@link #heapHits}, {@link #heapMisses},
+ * {@link #offHeapHits}, {@link #diskHits}) report how accesses were served.
+ * This class is not synchronized, and should be {@linkplain #close closed}
+ * to release its spill file and direct buffers.
+ *
+ * @param <E> the type of elements in this list
+ */
+public class TieredFastList<E> extends AbstractList<E>
+        implements RandomAccess, Closeable {
+
+    /**
+     * Default number of elements per segment.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+    /**
+     * Estimated heap cost of a segment beyond its elements: the array
+     * header and the reference slots.
+     */
+    private static long segmentOverhead(int segmentSize) {
+        return 16 + 4L * segmentSize;
+    }
+
+    static final class Segment {
+        Object[] data;         // null unless resident
+        long bytes;            // estimated heap bytes while resident
+        boolean dirty = true;  // data differs from the stored copies
+        ByteBuffer offHeap;    // serialized copy in direct memory, or null
+        long diskOffset = -1;  // position of the serialized copy in the spill file
+        int diskLength;
+    }
+
+    private final int shift;
+    private final int segmentSize;
+    private final long heapBudget;
+    private final long offHeapBudget;
+    private final ToLongFunction<? super E> sizer;
+    private final Path spillDir;
+
+    private final FastArrayList<Segment> segments = new FastArrayList<>();
+
+    /** Resident segments, least recently used first. */
+    private final LinkedHashMap<Segment, Segment> heapLru =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Segments with an off-heap copy, least recently used first. */
+    private final LinkedHashMap<Segment, Segment> offHeapLru =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Most recently accessed segment; accesses to it skip the LRU update. */
+    private Segment last;
+
+    private int size;
+    private long heapBytes;
+    private long offHeapBytes;
+
+    private FileChannel spillFile;
+    private long spillEnd;
+
+    private long heapHits, heapMisses, offHeapHits, diskHits, spills;
+
+    /**
+     * Constructs an empty list with the default segment size that spills to
+     * the default temporary-file directory.
+     *
+     * @param heapBudget the estimated heap bytes resident segments may use
+     * @param offHeapBudget the direct-memory bytes spilled segments may use
+     *        before spilling to disk
+     * @param sizer estimates the heap bytes retained by an element
+     */
+    public TieredFastList(long heapBudget, long offHeapBudget,
+                          ToLongFunction<? super E> sizer) {
+        this(DEFAULT_SEGMENT_SIZE, heapBudget, offHeapBudget, sizer, null);
+    }
+
+    /**
+     * Constructs an empty list.
+     *
+     * @param segmentSize the number of elements per segment, rounded up to
+     *        a power of two
+     * @param heapBudget the estimated heap bytes resident segments may use
+     * @param offHeapBudget the direct-memory bytes spilled segments may use
+     *        before spilling to disk
+     * @param sizer estimates the heap bytes retained by an element
+     * @param spillDir the directory of the spill file, or null for the
+     *        default temporary-file directory
+     * @throws IllegalArgumentException if the segment size is not positive
+     *         or a budget is negative
+     */
+    public TieredFastList(int segmentSize, long heapBudget, long offHeapBudget,
+                          ToLongFunction<? super E> sizer, Path spillDir) {
+        if (segmentSize <= 0 || segmentSize > (1 << 30))
+            throw new IllegalArgumentException("Illegal segment size: " +
+                    segmentSize);
+        if (heapBudget < 0 || offHeapBudget < 0)
+            throw new IllegalArgumentException("Illegal budget: " +
+                    heapBudget + ", " + offHeapBudget);
+        this.shift = 32 - Integer.numberOfLeadingZeros(segmentSize - 1);
+        this.segmentSize = 1 << shift;
+        this.heapBudget = heapBudget;
+        this.offHeapBudget = offHeapBudget;
+        this.sizer = Objects.requireNonNull(sizer);
+        this.spillDir = spillDir;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the element at the specified position, faulting its segment
+     * back into the heap if it was spilled.
+     *
+     * @param  index index of the element to return
+     * @return the element at the specified position in this list
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) resident(segments.get(index >>> shift))[index & (segmentSize - 1)];
+    }
+
+    /**
+     * Replaces the element at the specified position.  The stored copies
+     * of its segment become stale and are released.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     */
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        Segment s = segments.get(index >>> shift);
+        Object[] data = resident(s);
+        int i = index & (segmentSize - 1);
+        E oldValue = (E) data[i];
+        data[i] = element;
+        long delta = sizeOf(element) - sizeOf(oldValue);
+        s.bytes += delta;
+        heapBytes += delta;
+        if (!s.dirty) {
+            s.dirty = true;
+            releaseCopies(s);
+        }
+        evict(s);
+        return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link Collection#add})
+     */
+    public boolean add(E e) {
+        int i = size & (segmentSize - 1);
+        Segment tail;
+        if (i == 0) {
+            tail = new Segment();
+            tail.data = new Object[segmentSize];
+            tail.bytes = segmentOverhead(segmentSize);
+            heapBytes += tail.bytes;
+            segments.add(tail);
+            heapLru.put(tail, tail);
+        } else {
+            tail = segments.get(segments.size() - 1);
+        }
+        tail.data[i] = e;
+        long bytes = sizeOf(e);
+        tail.bytes += bytes;
+        heapBytes += bytes;
+        size++;
+        modCount++;
+        if (heapBytes > heapBudget)
+            evict(tail);
+        return true;
+    }
+
+    /**
+     * Removes all of the elements from this list, releases the direct
+     * buffers and truncates the spill file.
+     */
+    public void clear() {
+        modCount++;
+        for (Segment s : offHeapLru.keySet())
+            s.offHeap = null;
+        segments.clear();
+        heapLru.clear();
+        offHeapLru.clear();
+        last = null;
+        size = 0;
+        heapBytes = offHeapBytes = 0;
+        if (spillFile != null) {
+            try {
+                spillFile.truncate(0);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        spillEnd = 0;
+    }
+
+    /**
+     * Releases the spill file.  The list must not be used afterwards.
+     *
+     * @throws IOException if the spill file cannot be closed
+     */
+    public void close() throws IOException {
+        FileChannel f = spillFile;
+        spillFile = null;
+        clear();
+        if (f != null)
+            f.close();
+    }
+
+    private long sizeOf(E e) {
+        return (e == null) ? 0 : sizer.applyAsLong(e);
+    }
+
+    /** Returns the data of {@code s}, faulting it in if needed. */
+    private Object[] resident(Segment s) {
+        Object[] data = s.data;
+        if (data != null) {
+            heapHits++;
+            if (s != last) {
+                heapLru.get(s);
+                last = s;
+            }
+            return data;
+        }
+        return faultIn(s);
+    }
+
+    private Object[] faultIn(Segment s) {
+        heapMisses++;
+        ByteBuffer buf;
+        if (s.offHeap != null) {
+            offHeapHits++;
+            offHeapLru.get(s);
+            buf = s.offHeap.duplicate();
+        } else {
+            diskHits++;
+            buf = readSpill(s.diskOffset, s.diskLength);
+        }
+        Object[] data = deserialize(buf);
+        s.data = data;
+        s.dirty = false;
+        heapBytes += s.bytes;
+        heapLru.put(s, s);
+        last = s;
+        evict(s);
+        return data;
+    }
+
+    /**
+     * Spills least recently used segments until the resident ones fit the
+     * heap budget, sparing {@code pinned} and the segment being appended to.
+     */
+    private void evict(Segment pinned) {
+        if (heapBytes <= heapBudget)
+            return;
+        Segment tail = segments.get(segments.size() - 1);
+        while (heapBytes > heapBudget) {
+            Segment victim = null;
+            for (Segment s : heapLru.keySet()) {
+                if (s != pinned && s != tail) {
+                    victim = s;
+                    break;
+                }
+            }
+            if (victim == null)
+                return;
+            if (victim.dirty) {
+                store(victim);
+                victim.dirty = false;
+            }
+            heapLru.remove(victim);
+            victim.data = null;
+            heapBytes -= victim.bytes;
+            if (last == victim)
+                last = null;
+        }
+    }
+
+    /** Serializes a resident segment into direct memory or the spill file. */
+    private void store(Segment s) {
+        spills++;
+        byte[] bytes = serialize(s.data);
+        int len = bytes.length;
+        if (len <= offHeapBudget) {
+            while (offHeapBytes + len > offHeapBudget)
+                demote(offHeapLru.keySet().iterator().next());
+            ByteBuffer buf = ByteBuffer.allocateDirect(len);
+            buf.put(bytes).flip();
+            s.offHeap = buf;
+            offHeapBytes += len;
+            offHeapLru.put(s, s);
+        } else {
+            writeSpill(s, ByteBuffer.wrap(bytes));
+        }
+    }
+
+    /** Moves the off-heap copy of {@code s} to the spill file. */
+    private void demote(Segment s) {
+        if (s.diskOffset < 0)
+            writeSpill(s, s.offHeap.duplicate());
+        offHeapBytes -= s.offHeap.capacity();
+        s.offHeap = null;
+        offHeapLru.remove(s);
+    }
+
+    /** Drops the stored copies of a segment that has been modified. */
+    private void releaseCopies(Segment s) {
+        if (s.offHeap != null) {
+            offHeapBytes -= s.offHeap.capacity();
+            s.offHeap = null;
+            offHeapLru.remove(s);
+        }
+        s.diskOffset = -1;
+    }
+
+    private void writeSpill(Segment s, ByteBuffer buf) {
+        try {
+            if (spillFile == null) {
+                Path file = (spillDir == null)
+                        ? Files.createTempFile("force-", ".spill")
+                        : Files.createTempFile(spillDir, "force-", ".spill");
+                spillFile = FileChannel.open(file, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            s.diskOffset = spillEnd;
+            s.diskLength = buf.remaining();
+            long pos = spillEnd;
+            while (buf.hasRemaining())
+                pos += spillFile.write(buf, pos);
+            spillEnd = pos;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private ByteBuffer readSpill(long offset, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            while (buf.hasRemaining()) {
+                if (spillFile.read(buf, offset + buf.position()) < 0)
+                    throw new EOFException("Spill file truncated");
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private byte[] serialize(Object[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Object o : data)
+                out.writeObject(o);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object[] deserialize(final ByteBuffer buf) {
+        InputStream in = new InputStream() {
+            public int read() {
+                return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+            }
+
+            public int read(byte[] b, int off, int len) {
+                if (!buf.hasRemaining())
+                    return -1;
+                len = Math.min(len, buf.remaining());
+                buf.get(b, off, len);
+                return len;
+            }
+        };
+        Object[] data = new Object[segmentSize];
+        try (ObjectInputStream oin = new ObjectInputStream(in)) {
+            for (int i = 0; i < data.length; i++)
+                data[i] = oin.readObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the estimated heap bytes used by the resident segments.
+     *
+     * @return the estimated resident heap bytes
+     */
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the direct-memory bytes holding spilled segments.
+     *
+     * @return the off-heap bytes in use
+     */
+    public long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * Returns the length of the spill file, including space left behind by
+     * segments that were modified after spilling.
+     *
+     * @return the spill file length in bytes
+     */
+    public long diskBytes() {
+        return spillEnd;
+    }
+
+    /**
+     * Returns the number of accesses served by a resident segment.
+     *
+     * @return the number of heap hits
+     */
+    public long heapHits() {
+        return heapHits;
+    }
+
+    /**
+     * Returns the number of accesses that had to fault a segment in; each
+     * is also counted by {@link #offHeapHits} or {@link #diskHits}.
+     *
+     * @return the number of heap misses
+     */
+    public long heapMisses() {
+        return heapMisses;
+    }
+
+    /**
+     * Returns the number of faults served from direct memory.
+     *
+     * @return the number of off-heap hits
+     */
+    public long offHeapHits() {
+        return offHeapHits;
+    }
+
+    /**
+     * Returns the number of faults served from the spill file.
+     *
+     * @return the number of disk hits
+     */
+    public long diskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of times a segment was serialized.
+     *
+     * @return the number of spills
+     */
+    public long spills() {
+        return spills;
+    }
+}
@@ -0,0 +1,168 @@
+package com.force;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FastArrayList#mapAsync} and {@link FastArrayList#forEachAsync}
+ * with functions that stand in for remote calls by taking a while.
+ */
+public class AsyncMapperTest {
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdownNow();
+    }
+
+    private static FastArrayList<Integer> range(int n) {
+        FastArrayList<Integer> list = new FastArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            list.add(i);
+        return list;
+    }
+
+    /**
+     * Returns a function that takes a random time of up to {@code maxNanos}
+     * before returning its argument doubled, and gives up early if
+     * interrupted.
+     */
+    private static Function<Integer, Integer> withLatency(long maxNanos, long seed) {
+        return e -> {
+            long nanos = (long) (new Random(seed + e).nextDouble() * maxNanos);
+            LockSupport.parkNanos(nanos);
+            return 2 * e;
+        };
+    }
+
+    /**
+     * Spins for {@code nanos} without looking at the interrupt status.
+     */
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() - end < 0)
+            ;
+    }
+
+    @Test
+    public void resultsComeBackInOrderWithBatches() throws Exception {
+        FastArrayList<Integer> list = range(1000);
+        for (int batchSize : new int[] { 1, 7, 64, 1000, 5000 }) {
+            FastArrayList<Integer> doubled = list.mapAsync(withLatency(200_000, batchSize),
+                    new AsyncOptions().maxConcurrency(8).batchSize(batchSize)).get(10, TimeUnit.SECONDS);
+            assertEquals(list.size(), doubled.size());
+            for (int i = 0; i < list.size(); i++)
+                assertEquals("batch size " + batchSize, 2 * i, (int) doubled.get(i));
+        }
+    }
+
+    @Test
+    public void emptyListCompletesAtOnce() throws Exception {
+        assertTrue(new FastArrayList<Integer>().mapAsync(e -> e, 4).get().isEmpty());
+    }
+
+    @Test
+    public void timeoutFailsFutureEvenIfFunctionIgnoresInterrupts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FastArrayList<Integer> list = range(4);
+        long start = System.nanoTime();
+        CompletableFuture<FastArrayList<Integer>> future = list.mapAsync(e -> {
+            boolean done = false;
+            while (!done) {
+                try {
+                    done = release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    // keep going, as a function that ignores interrupts would
+                }
+            }
+            return e;
+        }, new AsyncOptions().maxConcurrency(2).timeout(100, TimeUnit.MILLISECONDS));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("completed normally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } finally {
+            release.countDown();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("failed after " + millis + " ms", millis < 2000);
+    }
+
+    @Test
+    public void failureOfOneElementFailsTheFuture() throws Exception {
+        IllegalStateException failure = new IllegalStateException();
+        CompletableFuture<Void> future = range(100).forEachAsync(e -> {
+            if (e == 42)
+                throw failure;
+        }, new AsyncOptions().maxConcurrency(4));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("completed normally");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void cancelStopsFurtherElements() throws Exception {
+        int concurrency = 2;
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(concurrency);
+        CompletableFuture<Void> future = range(1000).forEachAsync(e -> {
+            started.incrementAndGet();
+            running.countDown();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }, new AsyncOptions().maxConcurrency(concurrency));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        // a worker may have claimed an element just before the cancel
+        int atCancel = started.get() + concurrency;
+        Thread.sleep(100);
+        assertTrue(started.get() <= atCancel);
+        assertTrue(started.get() < 1000);
+    }
+
+    @Test
+    public void noInterruptReachesLaterTasksOnCallerPool() throws Exception {
+        FastArrayList<Integer> list = range(64);
+        Random random = new Random(42);
+        AtomicInteger leaks = new AtomicInteger();
+        for (int run = 0; run < 500; run++) {
+            CompletableFuture<Void> future = list.forEachAsync(e -> spin(random.nextInt(20_000)),
+                    new AsyncOptions().maxConcurrency(4).executor(POOL)
+                            .timeout(5 + random.nextInt(30), TimeUnit.MICROSECONDS));
+            if (random.nextBoolean())
+                future.cancel(true);
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException | CancellationException e) {
+                // expected for most runs
+            }
+            Future<?>[] probes = new Future<?>[4];
+            for (int p = 0; p < probes.length; p++) {
+                probes[p] = POOL.submit(() -> {
+                    if (Thread.currentThread().isInterrupted())
+                        leaks.incrementAndGet();
+                    try {
+                        Thread.sleep(0, 1000);
+                    } catch (InterruptedException e) {
+                        leaks.incrementAndGet();
+                    }
+                });
+            }
+            for (Future<?> probe : probes)
+                probe.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, leaks.get());
+    }
+}
@@ -0,0 +1,99 @@
+package com.force;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Compares the traversals of {@link FastArrayList} with those of
+ * {@link ConfinedFastArrayList}, which skip the comodification checks, and
+ * reports the time per element of each.
+ *
+ * <pre>
+ * java com.force.ConfinedBench [-size n] [-warmup n] [-runs n]
+ * </pre>
+ *
+ * <p>Every operation is run {@code warmup} times untimed, so that the
+ * compiler has settled, then {@code runs} times timed; the best and median
+ * runs are reported.  Run with {@code -Dcom.force.checkConfined=true} to
+ * check that the two lists then perform alike.
+ */
+public final class ConfinedBench {
+
+    /** Keeps the results of the operations alive. */
+    static long sink;
+
+    private interface Op {
+        void run(List<Integer> list);
+    }
+
+    private static final Map<String, Op> OPS = new LinkedHashMap<>();
+    static {
+        OPS.put("forEach", list -> {
+            long[] sum = new long[1];
+            list.forEach(e -> sum[0] += e);
+            sink += sum[0];
+        });
+        OPS.put("iterator", list -> {
+            long sum = 0;
+            for (Integer e : list)
+                sum += e;
+            sink += sum;
+        });
+        OPS.put("stream", list -> sink += list.stream().mapToLong(e -> e).sum());
+        OPS.put("replaceAll", list -> list.replaceAll(e -> e ^ 1));
+        OPS.put("removeIf", list -> {
+            // removes nothing, so that every run sees the same list
+            sink += list.removeIf(e -> e < 0) ? 1 : 0;
+        });
+    }
+
+    private static void measure(String name, Supplier<List<Integer>> factory, int size,
+                                int warmup, int runs) {
+        List<Integer> list = factory.get();
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++)
+            list.add(random.nextInt(1 << 20));
+        for (Map.Entry<String, Op> op : OPS.entrySet()) {
+            for (int r = 0; r < warmup; r++)
+                op.getValue().run(list);
+            long[] nanos = new long[runs];
+            for (int r = 0; r < runs; r++) {
+                long start = System.nanoTime();
+                op.getValue().run(list);
+                nanos[r] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%-24s %-12s %12.3f %12.3f%n", name, op.getKey(),
+                    (double) nanos[0] / size, (double) nanos[runs / 2] / size);
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = 1 << 20, warmup = 200, runs = 50;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (size < 1 || runs < 1)
+            throw new IllegalArgumentException("Illegal size or runs: " + size + ", " + runs);
+
+        System.out.printf("size %d, checkConfined %s%n", size,
+                Boolean.getBoolean("com.force.checkConfined"));
+        System.out.printf("%-24s %-12s %12s %12s%n", "list", "op", "best ns/el", "median ns/el");
+        measure("FastArrayList", FastArrayList::new, size, warmup, runs);
+        measure("ConfinedFastArrayList", ConfinedFastArrayList::new, size, warmup, runs);
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,331 @@
+package com.force;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Replays {@link OpTrace}s recorded from live lists against several list
+ * implementations and reports, for each kind of operation, the mean and
+ * 99th percentile time per operation and the bytes allocated per
+ * operation.
+ *
+ * <pre>
+ * java com.force.TraceReplay [-impl class]... [-warmup n] [-runs n] [trace]...
+ * </pre>
+ *
+ * <p>{@link FastArrayList} and {@link ArrayList} are always measured;
+ * {@code -impl} adds any {@code List} class with a public no-argument
+ * constructor.  Without trace files a synthetic trace is replayed: bursts
+ * of appends, range removals through {@code subList}, {@code removeIf}
+ * sweeps of the list and of sublists, sorts, {@code replaceAll}s and scattered {@code set}s.
+ *
+ * <p>Bulk operations are replayed as the calls that were recorded, on the
+ * list or on a sublist: a {@code removeIf} as one {@code removeIf}
+ * removing the same number of elements, spread evenly over the range it
+ * covered, a {@code sort} as a {@code sort}, and so on.
+ *
+ * <p>Each trace is replayed {@code warmup} times untimed, then
+ * {@code runs} times with every operation timed, then once more with the
+ * allocation of every operation measured.  Allocation is only reported on
+ * JVMs that support per-thread allocation counters.
+ */
+public final class TraceReplay {
+
+    private static final OpTrace.Op[] OPS = OpTrace.Op.values();
+
+    private final OpTrace trace;
+    private final Integer[] values;
+    private final Map<Integer, List<Integer>> chunks = new HashMap<>();
+    private final Spread spread = new Spread();
+
+    /**
+     * Accepts {@code count} of the {@code size} elements it is asked
+     * about, in order, spread evenly, so that a replayed {@code removeIf}
+     * removes as many elements as the recorded one.
+     */
+    private static final class Spread implements Predicate<Object> {
+        long count, size, seen;
+
+        Spread reset(int count, int size) {
+            this.count = count;
+            this.size = size;
+            this.seen = 0;
+            return this;
+        }
+
+        public boolean test(Object e) {
+            long i = seen++;
+            return (i + 1) * count / size != i * count / size;
+        }
+    }
+
+    private TraceReplay(OpTrace trace) {
+        this.trace = trace;
+        Random random = new Random(42);
+        values = new Integer[1 << 12];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextInt();
+        // multi-element inserts reuse one source list per length, so that
+        // the replay itself allocates nothing
+        for (int i = 0; i < trace.size(); i++) {
+            int n = trace.count(i);
+            if (trace.op(i) == OpTrace.Op.INSERT && n > 1 && !chunks.containsKey(n)) {
+                Integer[] chunk = new Integer[n];
+                for (int k = 0; k < n; k++)
+                    chunk[k] = values[k & (values.length - 1)];
+                chunks.put(n, Arrays.asList(chunk));
+            }
+        }
+    }
+
+    /**
+     * Fills a new list from {@code factory} to the initial size of the
+     * trace.
+     */
+    private List<Integer> prepare(Supplier<? extends List<Integer>> factory) {
+        List<Integer> list = factory.get();
+        for (int i = 0; i < trace.initialSize(); i++)
+            list.add(values[i & (values.length - 1)]);
+        return list;
+    }
+
+    /**
+     * Applies record {@code i} of the trace to {@code list}.
+     */
+    private void apply(List<Integer> list, int i) {
+        int index = trace.index(i);
+        int n = trace.count(i);
+        switch (trace.op(i)) {
+            case INSERT:
+                if (n == 1) {
+                    Integer v = values[i & (values.length - 1)];
+                    if (index == trace.listSize(i))
+                        list.add(v);
+                    else
+                        list.add(index, v);
+                } else {
+                    list.addAll(index, chunks.get(n));
+                }
+                break;
+            case REMOVE:
+                if (n == 1)
+                    list.remove(index);
+                else
+                    list.subList(index, index + n).clear();
+                break;
+            case SET:
+                list.set(index, values[i & (values.length - 1)]);
+                break;
+            case REWRITE:
+                list.subList(index, index + n).sort(null);
+                break;
+            case REMOVE_IF:
+                int span = trace.span(i);
+                range(list, index, span, trace.listSize(i)).removeIf(spread.reset(n, span));
+                break;
+            case SORT:
+                range(list, index, n, trace.listSize(i)).sort(null);
+                break;
+            case REPLACE_ALL:
+                range(list, index, n, trace.listSize(i)).replaceAll(UnaryOperator.identity());
+                break;
+            case REMOVE_RANGE:
+                list.subList(index, index + n).clear();
+                break;
+        }
+    }
+
+    /**
+     * Returns {@code list} if the {@code n} elements from {@code from}
+     * cover all of its {@code size} elements, and the sublist of them
+     * otherwise.
+     */
+    private static List<Integer> range(List<Integer> list, int from, int n, int size) {
+        return (from == 0 && n == size) ? list : list.subList(from, from + n);
+    }
+
+    private void replay(Supplier<? extends List<Integer>> factory) {
+        List<Integer> list = prepare(factory);
+        for (int i = 0; i < trace.size(); i++)
+            apply(list, i);
+    }
+
+    private void replayTimed(Supplier<? extends List<Integer>> factory, long[] nanos) {
+        List<Integer> list = prepare(factory);
+        for (int i = 0; i < trace.size(); i++) {
+            long start = System.nanoTime();
+            apply(list, i);
+            nanos[i] = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by each operation, or null if the JVM
+     * cannot tell.
+     */
+    private long[] replayAllocations(Supplier<? extends List<Integer>> factory) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        if (!threads.isThreadAllocatedMemorySupported()
+                || threads.getThreadAllocatedBytes(thread) < 0)
+            return null;
+        // the counter allocates nothing itself, but measure its cost anyway
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+        List<Integer> list = prepare(factory);
+        long[] bytes = new long[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            long start = threads.getThreadAllocatedBytes(thread);
+            apply(list, i);
+            bytes[i] = Math.max(0, threads.getThreadAllocatedBytes(thread) - start - overhead);
+        }
+        return bytes;
+    }
+
+    /**
+     * Measures one implementation and prints a line per operation kind.
+     */
+    private void measure(String name, Supplier<? extends List<Integer>> factory,
+                         int warmup, int runs) {
+        for (int r = 0; r < warmup; r++)
+            replay(factory);
+
+        int n = trace.size();
+        long[][] nanos = new long[runs][n];
+        for (int r = 0; r < runs; r++)
+            replayTimed(factory, nanos[r]);
+        long[] bytes = replayAllocations(factory);
+
+        for (OpTrace.Op op : OPS) {
+            int count = 0;
+            for (int i = 0; i < n; i++)
+                if (trace.op(i) == op)
+                    count++;
+            if (count == 0)
+                continue;
+            long[] samples = new long[count * runs];
+            long totalNanos = 0, totalBytes = 0;
+            int s = 0;
+            for (int i = 0; i < n; i++) {
+                if (trace.op(i) != op)
+                    continue;
+                for (int r = 0; r < runs; r++) {
+                    samples[s++] = nanos[r][i];
+                    totalNanos += nanos[r][i];
+                }
+                if (bytes != null)
+                    totalBytes += bytes[i];
+            }
+            Arrays.sort(samples);
+            long p99 = samples[(int) Math.ceil(samples.length * 0.99) - 1];
+            System.out.printf("%-24s %-12s %10d %12.1f %10d %12s%n", name, op, count,
+                    (double) totalNanos / samples.length, p99,
+                    (bytes == null) ? "n/a" : String.format("%.1f", (double) totalBytes / count));
+        }
+    }
+
+    /**
+     * Records a trace of a list put through bursts of appends, range
+     * removals, {@code removeIf} sweeps of the list and of its tail, sorts, {@code replaceAll}s and
+     * scattered sets.
+     */
+    static OpTrace synthetic(long seed) {
+        Random random = new Random(seed);
+        FastArrayList<Integer> list = new FastArrayList<>();
+        OpTrace trace = list.recordTrace(Integer.MAX_VALUE);
+        for (int round = 0; round < 200; round++) {
+            int burst = 100 + random.nextInt(2000);
+            for (int i = 0; i < burst; i++)
+                list.add(random.nextInt(1 << 20));
+            for (int i = 0; i < 50; i++)
+                list.set(random.nextInt(list.size()), random.nextInt(1 << 20));
+            int from = random.nextInt(list.size());
+            list.subList(from, Math.min(list.size(), from + random.nextInt(200))).clear();
+            int modulus = 2 + random.nextInt(10);
+            list.removeIf(e -> e % modulus == 0);
+            from = random.nextInt(list.size() + 1);
+            list.subList(from, list.size()).removeIf(e -> e % modulus == 1);
+            if (round % 10 == 0)
+                list.sort(null);
+            else if (round % 10 == 5)
+                list.replaceAll(e -> e ^ 1);
+        }
+        list.stopTrace();
+        return trace;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<List<Integer>> factory(String className) throws Exception {
+        Class<? extends List<Integer>> type =
+                (Class<? extends List<Integer>>) Class.forName(className).asSubclass(List.class);
+        type.getConstructor().newInstance(); // fail early
+        return () -> {
+            try {
+                return type.getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Supplier<List<Integer>>> impls = new LinkedHashMap<>();
+        impls.put("FastArrayList", FastArrayList::new);
+        impls.put("ArrayList", ArrayList::new);
+        List<String> files = new ArrayList<>();
+        int warmup = 5, runs = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-impl":
+                    String className = args[++i];
+                    impls.put(className.substring(className.lastIndexOf('.') + 1),
+                            factory(className));
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (runs < 1)
+            throw new IllegalArgumentException("Illegal runs: " + runs);
+
+        Map<String, OpTrace> traces = new LinkedHashMap<>();
+        if (files.isEmpty())
+            traces.put("synthetic", synthetic(1));
+        for (String file : files) {
+            try (InputStream in = new FileInputStream(file)) {
+                traces.put(file, OpTrace.readFrom(in));
+            } catch (IOException e) {
+                System.err.println(file + ": " + e.getMessage());
+            }
+        }
+
+        for (Map.Entry<String, OpTrace> t : traces.entrySet()) {
+            OpTrace trace = t.getValue();
+            System.out.printf("%s: %d ops, initial size %d%s%n", t.getKey(), trace.size(),
+                    trace.initialSize(),
+                    (trace.dropped() > 0) ? ", " + trace.dropped() + " ops dropped" : "");
+            System.out.printf("%-24s %-12s %10s %12s %10s %12s%n",
+                    "list", "op", "count", "ns/op", "p99 ns", "bytes/op");
+            TraceReplay replay = new TraceReplay(trace);
+            for (Map.Entry<String, Supplier<List<Integer>>> impl : impls.entrySet())
+                replay.measure(impl.getKey(), impl.getValue(), warmup, runs);
+            System.out.println();
+        }
+    }
+}